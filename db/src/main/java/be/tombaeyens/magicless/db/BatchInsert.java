@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNull;
+import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNullParameter;
+import static be.tombaeyens.magicless.app.util.Exceptions.assertSame;
+import static be.tombaeyens.magicless.app.util.Exceptions.assertTrue;
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Inserts many rows with JDBC batches: one round trip per batch
+ * instead of one per row.
+ *
+ * Alternatively, for drivers that don't handle JDBC batches well,
+ * {@link #multiRowValues()} inserts each batch with a single
+ * <code>INSERT ... VALUES (...), (...), ...</code> statement.
+ *
+ * All rows are inserted with the same columns.  By default those are
+ * all the table columns.  Columns that are not set in a row are inserted
+ * as null.
+ *
+ * Usage:
+ * <pre>
+ * tx.newBatchInsert(Users.TABLE)
+ *   .row()
+ *     .set(Users.ID, "1")
+ *     .set(Users.EMAIL, "one@example.com")
+ *   .row()
+ *     .set(Users.ID, "2")
+ *     .set(Users.EMAIL, "two@example.com")
+ *   .execute();
+ * </pre>
+ * or for a stream of objects:
+ * <pre>
+ * tx.newBatchInsert(Users.TABLE)
+ *   .execute(users, (batchInsert, user)->batchInsert
+ *     .set(Users.ID, user.getId())
+ *     .set(Users.EMAIL, user.getEmail()));
+ * </pre>
+ */
+public class BatchInsert extends Statement {
+
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  Table table;
+  List<Column> columns;
+  int batchSize = DEFAULT_BATCH_SIZE;
+  boolean multiRowValues = false;
+  List<List<Insert.ColumnValue>> rows = new ArrayList<>();
+  List<Insert.ColumnValue> row;
+  List<Integer> batchUpdateCounts = new ArrayList<>();
+  /** maps {@link Column#getIndex()} to the 0-based parameter position, -1 if the column is not inserted */
+  int[] parameterPositions;
+
+  public BatchInsert(Tx tx, Table table) {
+    super(tx);
+    assertNotNullParameter(table, "table");
+    this.table = table;
+  }
+
+  /** the columns to insert.  Defaults to all the table columns. */
+  public BatchInsert columns(Column... columns) {
+    for (Column column: columns) {
+      assertSame(table, column.getTable(), "The provided column must be from the table passed in the constructor");
+    }
+    this.columns = Arrays.asList(columns);
+    this.parameterPositions = null;
+    return this;
+  }
+
+  /** max number of rows sent to the database in a single JDBC batch */
+  public BatchInsert batchSize(int batchSize) {
+    assertTrue(batchSize>0, "batchSize must be positive: %d", batchSize);
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /** Insert each batch with a single multi row VALUES statement instead of a JDBC batch.
+   * Batches are split further if they would exceed {@link Dialect#getMaxParametersPerStatement()}. */
+  public BatchInsert multiRowValues() {
+    this.multiRowValues = true;
+    return this;
+  }
+
+  /** starts a new row. Subsequent {@link #set(Column, Object)}s apply to this row. */
+  public BatchInsert row() {
+    row = new ArrayList<>();
+    rows.add(row);
+    return this;
+  }
+
+  /** sets a value in the current row.  Starts a first row if needed. */
+  public BatchInsert set(Column column, Object value) {
+    assertNotNull(column.getTable(), "Column %s isn't added to the table.", column.getName());
+    assertSame(table, column.getTable(), "The provided column must be from the table passed in the constructor");
+    if (row==null) {
+      row();
+    }
+    row.add(new Insert.ColumnValue(column, value));
+    return this;
+  }
+
+  /** inserts all rows and returns the update count per batch */
+  public int[] execute() {
+    flush();
+    return getBatchUpdateCounts();
+  }
+
+  /** inserts a row for each object.  The rowBinder sets the values of
+   * the current row for the given object.  Rows are sent to the database
+   * each time a batch is full so that the stream is never materialized.
+   * Returns the update count per batch. */
+  public <T> int[] execute(Stream<T> objects, BiConsumer<BatchInsert,T> rowBinder) {
+    objects.forEach(object->{
+      row();
+      rowBinder.accept(this, object);
+      if (rows.size()>=batchSize) {
+        flush();
+      }
+    });
+    flush();
+    return getBatchUpdateCounts();
+  }
+
+  protected void flush() {
+    if (rows.isEmpty()) {
+      return;
+    }
+    tx.tableWritten(table);
+    if (columns==null) {
+      columns = new ArrayList<>(table.getColumns().values());
+    }
+    if (parameterPositions==null) {
+      parameterPositions = new int[table.getColumns().size()];
+      Arrays.fill(parameterPositions, -1);
+      for (int i=0; i<columns.size(); i++) {
+        parameterPositions[columns.get(i).getIndex()] = i;
+      }
+    }
+    try {
+      if (multiRowValues) {
+        flushMultiRowValues();
+      } else {
+        flushJdbcBatch();
+      }
+    } finally {
+      rows.clear();
+      row = null;
+    }
+  }
+
+  protected void flushJdbcBatch() {
+    String sql = getDialect().buildBatchInsertSql(this, 1);
+    PreparedStatement statement = createPreparedStatement(sql);
+    try {
+      tx.logSQL(sql);
+      int rowCount = 0;
+      for (List<Insert.ColumnValue> row: rows) {
+        bindRow(statement, row, 0);
+        statement.addBatch();
+        rowCount++;
+        if (rowCount % batchSize == 0) {
+          executeBatch(sql, statement, batchSize);
+        }
+      }
+      if (rowCount % batchSize != 0) {
+        executeBatch(sql, statement, rowCount % batchSize);
+      }
+    } catch (SQLException e) {
+      throw exceptionWithCause("execute "+getClass().getSimpleName()+" \n"+sql+"\n-->", e);
+    } finally {
+      releasePreparedStatement(sql, statement);
+    }
+  }
+
+  protected void flushMultiRowValues() {
+    int maxRowsPerStatement = Math.max(1, getDialect().getMaxParametersPerStatement() / columns.size());
+    int rowsPerStatement = Math.min(batchSize, maxRowsPerStatement);
+    for (int start=0; start<rows.size(); start+=rowsPerStatement) {
+      List<List<Insert.ColumnValue>> statementRows = rows.subList(start, Math.min(start+rowsPerStatement, rows.size()));
+      String sql = getDialect().buildBatchInsertSql(this, statementRows.size());
+      PreparedStatement statement = createPreparedStatement(sql);
+      try {
+        DB_LOGGER.debug(tx + " INSERT INTO " + table.getName() + " " + statementRows.size() + " rows with multi row VALUES");
+        for (int i=0; i<statementRows.size(); i++) {
+          bindRow(statement, statementRows.get(i), i*columns.size());
+        }
+        StatementExecution execution = startExecution(sql, null, statementRows.size()*columns.size());
+        int updateCount;
+        try {
+          updateCount = statement.executeUpdate();
+        } catch (SQLException e) {
+          if (execution!=null) {
+            execution.failed(e);
+          }
+          throw e;
+        } finally {
+          tx.freeTemporaryClobs();
+        }
+        if (execution!=null) {
+          execution.finished(updateCount);
+        }
+        batchUpdateCounts.add(updateCount);
+        DB_LOGGER.debug(tx + " " + getPastTense() + " " + updateCount + " rows in batch " + batchUpdateCounts.size());
+      } catch (SQLException e) {
+        throw exceptionWithCause("execute multi row "+getClass().getSimpleName()+" of "+statementRows.size()+" rows", e);
+      } finally {
+        releasePreparedStatement(sql, statement);
+      }
+    }
+  }
+
+  /** parameterOffset is the number of parameters in the statement before this row */
+  protected void bindRow(PreparedStatement statement, List<Insert.ColumnValue> row, int parameterOffset) {
+    Object[] values = new Object[columns.size()];
+    for (Insert.ColumnValue columnValue: row) {
+      int position = parameterPositions[columnValue.getColumn().getIndex()];
+      assertTrue(position!=-1, "Column %s is not in the batch insert columns %s", columnValue.getColumn(), columns);
+      values[position] = columnValue.getValue();
+    }
+    for (int i=0; i<values.length; i++) {
+      columns.get(i).getType().setParameter(statement, parameterOffset+i+1, values[i]);
+    }
+  }
+
+  protected void executeBatch(String sql, PreparedStatement statement, int batchRowCount) throws SQLException {
+    StatementExecution execution = startExecution(sql, null, batchRowCount*columns.size());
+    int[] rowUpdateCounts;
+    try {
+      rowUpdateCounts = statement.executeBatch();
+      for (int i=0; i<rowUpdateCounts.length; i++) {
+        // drivers that continue after a failing row report it in the counts
+        if (rowUpdateCounts[i]==java.sql.Statement.EXECUTE_FAILED) {
+          throw new BatchUpdateException("Row "+i+" of the batch failed", rowUpdateCounts);
+        }
+      }
+    } catch (SQLException e) {
+      if (execution!=null) {
+        execution.failed(e);
+      }
+      throw e;
+    } finally {
+      tx.freeTemporaryClobs();
+    }
+    int updateCount = 0;
+    for (int rowUpdateCount: rowUpdateCounts) {
+      // drivers may return SUCCESS_NO_INFO instead of the row count
+      updateCount += rowUpdateCount==java.sql.Statement.SUCCESS_NO_INFO ? 1 : rowUpdateCount;
+    }
+    if (execution!=null) {
+      execution.finished(updateCount);
+    }
+    batchUpdateCounts.add(updateCount);
+    DB_LOGGER.debug(tx + " " + getPastTense() + " " + updateCount + " rows in batch " + batchUpdateCounts.size());
+  }
+
+  protected int[] getBatchUpdateCounts() {
+    return batchUpdateCounts.stream()
+      .mapToInt(Integer::intValue)
+      .toArray();
+  }
+
+  protected String getPastTense() {
+    return "Inserted";
+  }
+
+  public Table getTable() {
+    return table;
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+}
@@ -20,6 +20,9 @@ import be.tombaeyens.magicless.db.constraints.NotNull;
 import be.tombaeyens.magicless.db.constraints.PrimaryKey;
 import be.tombaeyens.magicless.db.types.*;
 
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -88,6 +91,18 @@ public class Column implements SelectField {
     return this;
   }
 
+  /** JSON column that maps to objects of the given type, see {@link TypedJsonType} */
+  public Column typeJson(Type type, Gson gson) {
+    return typeJson(type, gson, false);
+  }
+
+  /** JSON column that maps to objects of the given type.  If lazy, the
+   * values are {@link LazyJson}s that deserialize on first access. */
+  public Column typeJson(Type type, Gson gson, boolean lazy) {
+    type(new TypedJsonType(type, gson, lazy));
+    return this;
+  }
+
   public List<Constraint> getConstraints() {
     return this.constraints;
   }
@@ -19,7 +19,9 @@ import be.tombaeyens.magicless.db.conditions.AndCondition;
 import be.tombaeyens.magicless.db.conditions.EqualCondition;
 import be.tombaeyens.magicless.db.conditions.IsNullCondition;
 import be.tombaeyens.magicless.db.conditions.LikeCondition;
+import be.tombaeyens.magicless.db.conditions.OrCondition;
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 public interface Condition {
 
@@ -35,6 +37,10 @@ public interface Condition {
     return new AndCondition(andConditions);
   }
 
+  public static Condition or(Condition... orConditions) {
+    return new OrCondition(orConditions);
+  }
+
   public static Condition like(Column column, String pattern) {
     return new LikeCondition(column, pattern);
   }
@@ -42,4 +48,10 @@ public interface Condition {
   String buildSql(Statement statement);
 
   void collectParameters(Parameters parameters);
+
+  /** adds everything that influences {@link #buildSql(Statement)} to the sqlShape.
+   * Conditions that don't override this make the statement SQL uncacheable. */
+  default void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.uncacheable();
+  }
 }
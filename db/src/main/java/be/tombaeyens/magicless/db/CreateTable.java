@@ -24,8 +24,12 @@ public class CreateTable extends Statement {
     this.table = table;
   }
 
+  /** creates the table and its {@link Table#getIndexes() indexes} */
   public void execute() {
     String sql = getDialect().buildCreateTableSql(table);
     executeUpdate(sql);
+    for (Index index: table.getIndexes()) {
+      tx.newCreateIndex(index).execute();
+    }
   }
 }
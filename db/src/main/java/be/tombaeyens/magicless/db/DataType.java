@@ -26,10 +26,34 @@ public interface DataType {
 
   <T> T getResultSetValue(int index, ResultSet resultSet);
 
+  /** the value that is kept when rows are read into memory, eg for cached
+   * selects and the entity cache.  Those rows can be shared between
+   * transactions so types with mutable values keep an immutable
+   * representation here and convert it in {@link #fromRowValue(Object)}. */
+  default Object getRowValue(int index, ResultSet resultSet) {
+    return getResultSetValue(index, resultSet);
+  }
+
+  /** converts a value produced by {@link #getRowValue(int, ResultSet)} to the
+   * value as returned by {@link #getResultSetValue(int, ResultSet)}.  Called
+   * on every read so each read gets its own instance. */
+  @SuppressWarnings("unchecked")
+  default <T> T fromRowValue(Object rowValue) {
+    return (T) rowValue;
+  }
+
   default String toLogText(Object value) {
     return value!=null ? value.toString() : "null";
   }
 
+  /** converts the text representation of a value, as produced by
+   * {@link Object#toString()} on the values of this type, to a value
+   * that can be passed to {@link #setParameter(PreparedStatement, int, Object)}.
+   * Used for bulk imports. */
+  default Object parseText(String text) {
+    return text;
+  }
+
   default boolean isRightAligned() {
     return false;
   }
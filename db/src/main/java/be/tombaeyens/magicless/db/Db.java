@@ -15,7 +15,16 @@
  */
 package be.tombaeyens.magicless.db;
 
-import com.mchange.v2.c3p0.ComboPooledDataSource;
+import be.tombaeyens.magicless.db.bulk.BulkImport;
+import be.tombaeyens.magicless.db.impl.CacheStats;
+import be.tombaeyens.magicless.db.impl.EntityCache;
+import be.tombaeyens.magicless.db.impl.QueryCache;
+import be.tombaeyens.magicless.db.impl.SqlCache;
+import be.tombaeyens.magicless.db.pool.C3p0ConnectionPool;
+import be.tombaeyens.magicless.db.pool.ConnectionPool;
+import be.tombaeyens.magicless.db.pool.ConnectionPoolStats;
+import be.tombaeyens.magicless.db.pool.ReplicaRouter;
+import be.tombaeyens.magicless.db.pool.SimpleConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,43 +34,89 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNull;
-import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
 
 public class Db {
 
   public static final Logger DB_LOGGER = LoggerFactory.getLogger(Db.class);
 
+  protected ConnectionPool connectionPool;
+  /** null if there are no replicas */
+  protected ReplicaRouter replicaRouter;
   protected DataSource dataSource;
   protected Dialect dialect;
   protected String processRef;
+  protected Integer nodeId;
+  protected int maxStatementsPerConnection;
+  protected CacheStats statementCacheStats = new CacheStats();
+  protected int selectLogMaxRows;
+  protected QueryCache queryCache;
+  protected SqlCache sqlCache = new SqlCache();
+  protected Map<Table,EntityCache> entityCaches = new ConcurrentHashMap<>();
+  protected List<StatementListener> statementListeners = new CopyOnWriteArrayList<>();
+  protected SlowQueryLog slowQueryLog;
+  protected RetryPolicy retryPolicy;
+  protected int asyncThreads;
+  protected int asyncQueueSize;
+  protected boolean asyncVirtualThreads;
+  protected volatile ExecutorService asyncExecutor;
+  /** limits the concurrent async transactions to the number of pooled connections */
+  protected Semaphore asyncPermits;
 
   public Db(DbConfiguration dbConfiguration) {
     assertNotNull(dbConfiguration.getUrl(), "Db url is null");
     assertNotNull(dbConfiguration.getDialect(), "Db dialect is null");
 
-    try {
-      ComboPooledDataSource dataSource = new ComboPooledDataSource();
-      this.dataSource = dataSource;
-      dataSource.setDriverClass(dbConfiguration.getDriver()); //loads the jdbc driver
-      dataSource.setJdbcUrl(dbConfiguration.getUrl());
-      dataSource.setUser(dbConfiguration.getUsername());
-      dataSource.setPassword(dbConfiguration.getPassword());
-      dataSource.setAcquireRetryAttempts(1);
-      dataSource.setMinPoolSize(1);
-      // the settings below are optional -- c3p0 can work with defaults
-      // dataSource.setMinPoolSize(5);
-      // dataSource.setAcquireIncrement(5);
-      // dataSource.setMaxPoolSize(20);
-
-      this.dialect = dbConfiguration.getDialect();
-      this.processRef = initializeProcessRef(dbConfiguration);
-
+    this.connectionPool = createConnectionPool(dbConfiguration);
+    this.dataSource = connectionPool.getDataSource();
+    if (!dbConfiguration.getReplicaUrls().isEmpty()) {
+      List<ConnectionPool> replicas = new ArrayList<>();
+      for (String replicaUrl: dbConfiguration.getReplicaUrls()) {
+        replicas.add(createConnectionPool(dbConfiguration.getReplicaConfiguration(replicaUrl)));
+      }
+      this.replicaRouter = new ReplicaRouter(replicas, dbConfiguration.getReplicaSelection());
+    }
+    this.selectLogMaxRows = dbConfiguration.getSelectLogMaxRows();
+    this.queryCache = new QueryCache(dbConfiguration.getQueryCacheMaxSize());
+    this.maxStatementsPerConnection = dbConfiguration.getMaxStatementsPerConnection();
+    this.dialect = dbConfiguration.getDialect();
+    this.processRef = initializeProcessRef(dbConfiguration);
+    this.nodeId = dbConfiguration.getNodeId();
+    this.retryPolicy = dbConfiguration.getRetryPolicy()!=null ? dbConfiguration.getRetryPolicy() : new RetryPolicy();
+    this.asyncThreads = dbConfiguration.getAsyncThreads();
+    this.asyncQueueSize = dbConfiguration.getAsyncQueueSize();
+    this.asyncVirtualThreads = dbConfiguration.isAsyncVirtualThreads();
+    this.asyncPermits = new Semaphore(dbConfiguration.getMaxPoolSize());
+    if (dbConfiguration.getSlowQueryThresholdMillis()>=0) {
+      this.slowQueryLog = new SlowQueryLog(this, dbConfiguration);
+      addStatementListener(slowQueryLog);
+    }
+  }
 
-    } catch (Exception e) {
-      throw exceptionWithCause("create data source " + dbConfiguration.getUrl(), e);
+  /** Override to plug in another {@link ConnectionPool} implementation. */
+  protected ConnectionPool createConnectionPool(DbConfiguration dbConfiguration) {
+    String connectionPool = dbConfiguration.getConnectionPool();
+    if (connectionPool==null || DbConfiguration.CONNECTION_POOL_C3P0.equals(connectionPool)) {
+      return new C3p0ConnectionPool(dbConfiguration);
+    } else if (DbConfiguration.CONNECTION_POOL_SIMPLE.equals(connectionPool)) {
+      return new SimpleConnectionPool(dbConfiguration);
     }
+    throw new RuntimeException("Unknown connection pool " + connectionPool);
   }
 
   protected String initializeProcessRef(DbConfiguration dbConfiguration) {
@@ -79,24 +134,167 @@ public class Db {
     return processRef;
   }
 
-  @SuppressWarnings("unchecked")
   public <T> T tx(TxLogic txLogic) {
+    return execute(txLogic, false);
+  }
+
+  /** Executes the txLogic in a read only transaction.  If replicas are
+   * configured, the transaction runs on one of the replicas and falls back
+   * to the primary when no replica is available.  Reads on a replica may
+   * not yet see the latest commits on the primary.
+   * Read only transactions are rolled back instead of committed. */
+  public <T> T readTx(TxLogic txLogic) {
+    return execute(txLogic, true);
+  }
+
+  /** Executes the txLogic in a transaction on the async executor, see
+   * {@link DbConfiguration#asyncThreads(int)}.  {@link Tx#getCurrentTx()}
+   * is set in the executing thread for the duration of the transaction.
+   * The future completes with the tx result or with the exception. */
+  public <T> CompletableFuture<T> txAsync(TxLogic txLogic) {
+    return executeAsync(txLogic, false);
+  }
+
+  /** {@link #readTx(TxLogic)} on the async executor, see {@link #txAsync(TxLogic)} */
+  public <T> CompletableFuture<T> readTxAsync(TxLogic txLogic) {
+    return executeAsync(txLogic, true);
+  }
+
+  protected <T> CompletableFuture<T> executeAsync(TxLogic txLogic, boolean readOnly) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      getAsyncExecutor().execute(()->{
+        try {
+          asyncPermits.acquire();
+          try {
+            future.complete(execute(txLogic, readOnly));
+          } finally {
+            asyncPermits.release();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          future.completeExceptionally(e);
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  protected ExecutorService getAsyncExecutor() {
+    if (asyncExecutor==null) {
+      synchronized (this) {
+        if (asyncExecutor==null) {
+          asyncExecutor = createAsyncExecutor();
+        }
+      }
+    }
+    return asyncExecutor;
+  }
+
+  /** Override to plug in another executor for {@link #txAsync(TxLogic)}. */
+  protected ExecutorService createAsyncExecutor() {
+    if (asyncVirtualThreads) {
+      try {
+        // via reflection as this code is compiled for java 8
+        return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+      } catch (ReflectiveOperationException e) {
+        DB_LOGGER.warn("Virtual threads are not supported by this JVM, using platform threads for async transactions");
+      }
+    }
+    AtomicInteger threadIndex = new AtomicInteger(1);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(asyncQueueSize),
+      runnable->{
+        Thread thread = new Thread(runnable, "tx-async-" + threadIndex.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** executes the transaction and executes it again on retryable failures, see {@link RetryPolicy} */
+  protected <T> T execute(TxLogic txLogic, boolean readOnly) {
+    int attempt = 1;
+    while (true) {
+      try {
+        T result = executeOnce(txLogic, readOnly);
+        if (attempt>1) {
+          retryPolicy.retrySucceeded();
+        }
+        return result;
+      } catch (RuntimeException e) {
+        if (!dialect.isRetryable(e)) {
+          throw e;
+        }
+        if (attempt>=retryPolicy.getMaxAttempts()) {
+          if (attempt>1) {
+            retryPolicy.retriesExhausted();
+          }
+          throw e;
+        }
+        long backoffMillis = retryPolicy.getBackoffMillis(attempt);
+        DB_LOGGER.warn("Transaction attempt " + attempt + " failed, retrying in " + backoffMillis + "ms: " + e.getMessage());
+        retryPolicy.retrying();
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+        attempt++;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  protected <T> T executeOnce(TxLogic txLogic, boolean readOnly) {
     Connection connection = null;
     Tx tx = null;
     Exception exception = null;
     try {
-      connection = dataSource.getConnection();
+      boolean replica = false;
+      if (readOnly && replicaRouter!=null) {
+        connection = replicaRouter.getConnection();
+        replica = connection!=null;
+      }
+      if (connection==null) {
+        connection = connectionPool.getConnection();
+      }
       connection.setAutoCommit(false);
-      tx = new Tx(this, connection);
+      if (readOnly) {
+        connection.setReadOnly(true);
+      }
+      tx = new Tx(this, connection, readOnly, replica);
       txLogic.execute(tx);
     } catch (Exception e) {
       exception = e;
-      tx.setRollbackOnly(e);
+      if (tx!=null) {
+        tx.setRollbackOnly(e);
+      }
     }
     if (tx!=null) {
       tx.end();
+      if (exception==null) {
+        exception = tx.getCommitException();
+      }
     }
     if (connection!=null) {
+      if (readOnly) {
+        try {
+          connection.setReadOnly(false);
+        } catch (SQLException | RuntimeException e) {
+          DB_LOGGER.error("Tx connection reset read only: " + e.getMessage(), e);
+        }
+      }
+      // in its own try so that a failing reset doesn't leak the pooled connection
       try {
         connection.close();
       } catch (SQLException e) {
@@ -113,6 +311,102 @@ public class Db {
     return tx!=null ? (T) tx.getResult() : null;
   }
 
+  /** Override to plug in a different way to log select results.
+   * By default, the results are only logged if {@link #DB_LOGGER} is on debug level. */
+  protected SelectLogger createSelectLogger(SelectResults selectResults) {
+    return isSelectLogEnabled()
+      ? new TableSelectLogger(selectResults, selectLogMaxRows)
+      : SelectLogger.NONE;
+  }
+
+  protected boolean isSelectLogEnabled() {
+    return DB_LOGGER.isDebugEnabled();
+  }
+
+  /** loads CSV or NDJSON into the table, see {@link BulkImport} */
+  public BulkImport newBulkImport(Table table) {
+    return new BulkImport(this, table);
+  }
+
+  /** See {@link StatementMetrics} for a listener that keeps latency histograms per sql */
+  public Db addStatementListener(StatementListener statementListener) {
+    statementListeners.add(statementListener);
+    return this;
+  }
+
+  public Db removeStatementListener(StatementListener statementListener) {
+    statementListeners.remove(statementListener);
+    return this;
+  }
+
+  public List<StatementListener> getStatementListeners() {
+    return statementListeners;
+  }
+
+  /** Caches the generated sql per statement shape.
+   * Use {@link SqlCache#getStats()} to see the hits and misses. */
+  public SqlCache getSqlCache() {
+    return sqlCache;
+  }
+
+  /** the results of selects marked with {@link Select#cached(java.time.Duration)} */
+  public QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /** Caches the rows of the table by primary key across transactions.
+   * Selects of all columns (or a subset) with only a primary key equality condition
+   * are served from the cache.  Rows are invalidated when a transaction that
+   * updates or deletes them through this Db commits.  Only use this for
+   * tables that are mostly read and are not written by other processes. */
+  public Db enableEntityCache(Table table, int maxSize) {
+    assertNotNull(table.getPrimaryKeyColumn(), "Entity cache requires a primary key in %s", table);
+    entityCaches.put(table, new EntityCache(table, maxSize));
+    return this;
+  }
+
+  /** the entity cache of the table or null if the table is not cached */
+  public EntityCache getEntityCache(Table table) {
+    return entityCaches.get(table);
+  }
+
+  /** null if no replicas are configured */
+  public ReplicaRouter getReplicaRouter() {
+    return replicaRouter;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public ConnectionPool getConnectionPool() {
+    return connectionPool;
+  }
+
+  /** active, idle and waiting connections and acquire latency */
+  public ConnectionPoolStats getConnectionPoolStats() {
+    return connectionPool.getStats();
+  }
+
+  /** the slow query log or null if it's not enabled, see {@link DbConfiguration#slowQueryThresholdMillis(long)} */
+  public SlowQueryLog getSlowQueryLog() {
+    return slowQueryLog;
+  }
+
+  /** closes all pooled connections */
+  public void close() {
+    if (asyncExecutor!=null) {
+      asyncExecutor.shutdown();
+    }
+    if (slowQueryLog!=null) {
+      slowQueryLog.close();
+    }
+    if (replicaRouter!=null) {
+      replicaRouter.close();
+    }
+    connectionPool.close();
+  }
+
   public DataSource getDataSource() {
     return dataSource;
   }
@@ -121,7 +415,22 @@ public class Db {
     return dialect;
   }
 
+  /** max number of prepared statements cached per connection */
+  public int getMaxStatementsPerConnection() {
+    return maxStatementsPerConnection;
+  }
+
+  /** hits and misses of the prepared statement caches of all transactions */
+  public CacheStats getStatementCacheStats() {
+    return statementCacheStats;
+  }
+
   public String getProcess() {
     return processRef;
   }
+
+  /** the configured {@link DbConfiguration#nodeId(int)} or null */
+  public Integer getNodeId() {
+    return nodeId;
+  }
 }
@@ -17,8 +17,29 @@ package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.app.util.Configuration;
 import be.tombaeyens.magicless.db.dialects.H2Dialect;
+import be.tombaeyens.magicless.db.impl.QueryCache;
+import be.tombaeyens.magicless.db.pool.C3p0ConnectionPool;
+import be.tombaeyens.magicless.db.pool.ReplicaRouter;
+import be.tombaeyens.magicless.db.pool.SimpleConnectionPool;
 
-public class DbConfiguration {
+import java.util.ArrayList;
+import java.util.List;
+
+public class DbConfiguration implements Cloneable {
+
+  public static final int DEFAULT_MAX_STATEMENTS_PER_CONNECTION = 100;
+
+  /** {@link #connectionPool(String)} value for {@link C3p0ConnectionPool} */
+  public static final String CONNECTION_POOL_C3P0 = "c3p0";
+  /** {@link #connectionPool(String)} value for {@link SimpleConnectionPool} */
+  public static final String CONNECTION_POOL_SIMPLE = "simple";
+
+  public static final int DEFAULT_MIN_POOL_SIZE = 1;
+  public static final int DEFAULT_MAX_POOL_SIZE = 15;
+  public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+  public static final long DEFAULT_MAX_IDLE_TIME_MILLIS = 600000;
+  public static final int DEFAULT_SLOW_QUERY_MAX_PER_MINUTE = 60;
+  public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
 
   String driver;
   String url;
@@ -26,6 +47,27 @@ public class DbConfiguration {
   String password;
   Dialect dialect;
   String processRef;
+  Integer nodeId;
+  int maxStatementsPerConnection = DEFAULT_MAX_STATEMENTS_PER_CONNECTION;
+  int selectLogMaxRows = TableSelectLogger.DEFAULT_MAX_ROWS;
+  int queryCacheMaxSize = QueryCache.DEFAULT_MAX_SIZE;
+  String connectionPool = CONNECTION_POOL_C3P0;
+  int minPoolSize = DEFAULT_MIN_POOL_SIZE;
+  int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+  long acquireTimeoutMillis = DEFAULT_ACQUIRE_TIMEOUT_MILLIS;
+  long maxIdleTimeMillis = DEFAULT_MAX_IDLE_TIME_MILLIS;
+  long maxLifetimeMillis = 0;
+  boolean validateOnCheckout = false;
+  long slowQueryThresholdMillis = -1;
+  boolean slowQueryExplain = false;
+  double slowQuerySampleRate = 1d;
+  int slowQueryMaxPerMinute = DEFAULT_SLOW_QUERY_MAX_PER_MINUTE;
+  List<String> replicaUrls = new ArrayList<>();
+  Integer asyncThreads;
+  int asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+  boolean asyncVirtualThreads = false;
+  RetryPolicy retryPolicy;
+  String replicaSelection = ReplicaRouter.ROUND_ROBIN;
 
   public DbConfiguration() {
   }
@@ -36,6 +78,41 @@ public class DbConfiguration {
     username(configuration.getString(prefix + ".username"));
     password(configuration.getString(prefix + ".password"));
     processRef(configuration.getString(prefix + ".processref"));
+    Integer nodeId = configuration.getInteger(prefix + ".nodeid");
+    if (nodeId!=null) {
+      nodeId(nodeId);
+    }
+    maxStatementsPerConnection(configuration.getInteger(prefix + ".maxstatementsperconnection", DEFAULT_MAX_STATEMENTS_PER_CONNECTION));
+    selectLogMaxRows(configuration.getInteger(prefix + ".selectlogmaxrows", TableSelectLogger.DEFAULT_MAX_ROWS));
+    queryCacheMaxSize(configuration.getInteger(prefix + ".querycachemaxsize", QueryCache.DEFAULT_MAX_SIZE));
+    connectionPool(configuration.getString(prefix + ".connectionpool", CONNECTION_POOL_C3P0));
+    minPoolSize(configuration.getInteger(prefix + ".minpoolsize", DEFAULT_MIN_POOL_SIZE));
+    maxPoolSize(configuration.getInteger(prefix + ".maxpoolsize", DEFAULT_MAX_POOL_SIZE));
+    acquireTimeoutMillis(configuration.getInteger(prefix + ".acquiretimeoutmillis", (int) DEFAULT_ACQUIRE_TIMEOUT_MILLIS));
+    maxIdleTimeMillis(configuration.getInteger(prefix + ".maxidletimemillis", (int) DEFAULT_MAX_IDLE_TIME_MILLIS));
+    maxLifetimeMillis(configuration.getInteger(prefix + ".maxlifetimemillis", 0));
+    validateOnCheckout(Boolean.parseBoolean(configuration.getString(prefix + ".validateoncheckout", "false")));
+    slowQueryThresholdMillis(configuration.getInteger(prefix + ".slowquerythresholdmillis", -1));
+    slowQueryExplain(Boolean.parseBoolean(configuration.getString(prefix + ".slowqueryexplain", "false")));
+    slowQuerySampleRate(Double.parseDouble(configuration.getString(prefix + ".slowquerysamplerate", "1")));
+    slowQueryMaxPerMinute(configuration.getInteger(prefix + ".slowquerymaxperminute", DEFAULT_SLOW_QUERY_MAX_PER_MINUTE));
+    String replicaUrls = configuration.getString(prefix + ".replicas");
+    if (replicaUrls!=null) {
+      for (String replicaUrl: replicaUrls.split(",")) {
+        replica(replicaUrl.trim());
+      }
+    }
+    replicaSelection(configuration.getString(prefix + ".replicaselection", ReplicaRouter.ROUND_ROBIN));
+    Integer asyncThreads = configuration.getInteger(prefix + ".asyncthreads");
+    if (asyncThreads!=null) {
+      asyncThreads(asyncThreads);
+    }
+    asyncQueueSize(configuration.getInteger(prefix + ".asyncqueuesize", DEFAULT_ASYNC_QUEUE_SIZE));
+    asyncVirtualThreads(Boolean.parseBoolean(configuration.getString(prefix + ".asyncvirtualthreads", "false")));
+    retryPolicy(new RetryPolicy()
+      .maxAttempts(configuration.getInteger(prefix + ".txmaxattempts", RetryPolicy.DEFAULT_MAX_ATTEMPTS))
+      .initialBackoffMillis(configuration.getInteger(prefix + ".txretryinitialbackoffmillis", (int) RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS))
+      .maxBackoffMillis(configuration.getInteger(prefix + ".txretrymaxbackoffmillis", (int) RetryPolicy.DEFAULT_MAX_BACKOFF_MILLIS)));
   }
 
   public DbConfiguration driver(String driver) {
@@ -85,6 +162,152 @@ public class DbConfiguration {
     return this;
   }
 
+  /** unique id of this process among all processes that generate ids in the
+   * same database with a {@link be.tombaeyens.magicless.db.id.TimeOrderedIdGenerator}.
+   * Between 0 and {@link be.tombaeyens.magicless.db.id.TimeOrderedIdGenerator#MAX_NODE_ID},
+   * so at most 1024 nodes.  Not set by default. */
+  public DbConfiguration nodeId(int nodeId) {
+    this.nodeId = nodeId;
+    return this;
+  }
+
+  /** max number of prepared statements that are cached per connection.
+   * 0 disables prepared statement caching. */
+  public DbConfiguration maxStatementsPerConnection(int maxStatementsPerConnection) {
+    this.maxStatementsPerConnection = maxStatementsPerConnection;
+    return this;
+  }
+
+  /** max number of rows that are logged per select when debug logging is enabled */
+  public DbConfiguration selectLogMaxRows(int selectLogMaxRows) {
+    this.selectLogMaxRows = selectLogMaxRows;
+    return this;
+  }
+
+  /** max number of select results kept in the query cache, see {@link Select#cached(java.time.Duration)} */
+  public DbConfiguration queryCacheMaxSize(int queryCacheMaxSize) {
+    this.queryCacheMaxSize = queryCacheMaxSize;
+    return this;
+  }
+
+  /** {@link #CONNECTION_POOL_C3P0} (default) or {@link #CONNECTION_POOL_SIMPLE} */
+  public DbConfiguration connectionPool(String connectionPool) {
+    this.connectionPool = connectionPool;
+    return this;
+  }
+
+  /** number of connections that are opened when the pool is created and kept open when idle */
+  public DbConfiguration minPoolSize(int minPoolSize) {
+    this.minPoolSize = minPoolSize;
+    return this;
+  }
+
+  public DbConfiguration maxPoolSize(int maxPoolSize) {
+    this.maxPoolSize = maxPoolSize;
+    return this;
+  }
+
+  /** max time to wait for a connection when all connections are in use */
+  public DbConfiguration acquireTimeoutMillis(long acquireTimeoutMillis) {
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    return this;
+  }
+
+  /** idle connections above the min pool size are closed after this time.
+   * 0 means idle connections are never closed. */
+  public DbConfiguration maxIdleTimeMillis(long maxIdleTimeMillis) {
+    this.maxIdleTimeMillis = maxIdleTimeMillis;
+    return this;
+  }
+
+  /** connections are closed after this time.  0 means connections are never retired. */
+  public DbConfiguration maxLifetimeMillis(long maxLifetimeMillis) {
+    this.maxLifetimeMillis = maxLifetimeMillis;
+    return this;
+  }
+
+  /** checks idle connections with {@link java.sql.Connection#isValid(int)} before handing them out */
+  public DbConfiguration validateOnCheckout(boolean validateOnCheckout) {
+    this.validateOnCheckout = validateOnCheckout;
+    return this;
+  }
+
+  /** selects, updates and deletes that take longer are logged to the
+   * {@link SlowQueryLog#SLOW_QUERY_LOGGER}.  Negative values (default) disable the slow query log. */
+  public DbConfiguration slowQueryThresholdMillis(long slowQueryThresholdMillis) {
+    this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+    return this;
+  }
+
+  /** also log the query plan of slow queries, captured on a separate connection */
+  public DbConfiguration slowQueryExplain(boolean slowQueryExplain) {
+    this.slowQueryExplain = slowQueryExplain;
+    return this;
+  }
+
+  /** fraction between 0 and 1 of the slow queries that are logged */
+  public DbConfiguration slowQuerySampleRate(double slowQuerySampleRate) {
+    this.slowQuerySampleRate = slowQuerySampleRate;
+    return this;
+  }
+
+  public DbConfiguration slowQueryMaxPerMinute(int slowQueryMaxPerMinute) {
+    this.slowQueryMaxPerMinute = slowQueryMaxPerMinute;
+    return this;
+  }
+
+  /** adds a read replica for {@link Db#readTx(TxLogic)}.  The replica uses
+   * the same credentials and pool settings as the primary. */
+  public DbConfiguration replica(String replicaUrl) {
+    this.replicaUrls.add(replicaUrl);
+    return this;
+  }
+
+  /** {@link ReplicaRouter#ROUND_ROBIN} (default) or {@link ReplicaRouter#LEAST_BUSY} */
+  public DbConfiguration replicaSelection(String replicaSelection) {
+    this.replicaSelection = replicaSelection;
+    return this;
+  }
+
+  /** number of threads that execute {@link Db#txAsync(TxLogic)}.  Defaults to the max pool size. */
+  public DbConfiguration asyncThreads(int asyncThreads) {
+    this.asyncThreads = asyncThreads;
+    return this;
+  }
+
+  /** max number of async transactions waiting for a thread.  Beyond that,
+   * the returned futures complete with a {@link java.util.concurrent.RejectedExecutionException} */
+  public DbConfiguration asyncQueueSize(int asyncQueueSize) {
+    this.asyncQueueSize = asyncQueueSize;
+    return this;
+  }
+
+  /** execute async transactions on virtual threads if the JVM supports them.
+   * The number of concurrent transactions is still limited to the max pool size. */
+  public DbConfiguration asyncVirtualThreads(boolean asyncVirtualThreads) {
+    this.asyncVirtualThreads = asyncVirtualThreads;
+    return this;
+  }
+
+  /** how transactions are retried on deadlocks and serialization failures.
+   * By default transactions are not retried. */
+  public DbConfiguration retryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
+  /** the configuration for the connection pool of a replica */
+  public DbConfiguration getReplicaConfiguration(String replicaUrl) {
+    try {
+      DbConfiguration replicaConfiguration = (DbConfiguration) clone();
+      replicaConfiguration.url = replicaUrl;
+      replicaConfiguration.replicaUrls = new ArrayList<>();
+      return replicaConfiguration;
+    } catch (CloneNotSupportedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public String getDriver() {
     return driver;
   }
@@ -108,4 +331,89 @@ public class DbConfiguration {
   public String getProcessRef() {
     return processRef;
   }
+
+  /** null if not configured */
+  public Integer getNodeId() {
+    return nodeId;
+  }
+
+  public int getMaxStatementsPerConnection() {
+    return maxStatementsPerConnection;
+  }
+
+  public int getSelectLogMaxRows() {
+    return selectLogMaxRows;
+  }
+
+  public int getQueryCacheMaxSize() {
+    return queryCacheMaxSize;
+  }
+
+  public String getConnectionPool() {
+    return connectionPool;
+  }
+
+  public int getMinPoolSize() {
+    return minPoolSize;
+  }
+
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  public long getAcquireTimeoutMillis() {
+    return acquireTimeoutMillis;
+  }
+
+  public long getMaxIdleTimeMillis() {
+    return maxIdleTimeMillis;
+  }
+
+  public long getMaxLifetimeMillis() {
+    return maxLifetimeMillis;
+  }
+
+  public boolean isValidateOnCheckout() {
+    return validateOnCheckout;
+  }
+
+  public long getSlowQueryThresholdMillis() {
+    return slowQueryThresholdMillis;
+  }
+
+  public boolean isSlowQueryExplain() {
+    return slowQueryExplain;
+  }
+
+  public double getSlowQuerySampleRate() {
+    return slowQuerySampleRate;
+  }
+
+  public int getSlowQueryMaxPerMinute() {
+    return slowQueryMaxPerMinute;
+  }
+
+  public List<String> getReplicaUrls() {
+    return replicaUrls;
+  }
+
+  public String getReplicaSelection() {
+    return replicaSelection;
+  }
+
+  public int getAsyncThreads() {
+    return asyncThreads!=null ? asyncThreads : maxPoolSize;
+  }
+
+  public int getAsyncQueueSize() {
+    return asyncQueueSize;
+  }
+
+  public boolean isAsyncVirtualThreads() {
+    return asyncVirtualThreads;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
 }
@@ -16,7 +16,7 @@
 
 package be.tombaeyens.magicless.db;
 
-import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNullParameter;
 
@@ -32,11 +32,19 @@ public class Delete extends Statement {
   }
 
   public int execute() {
-    String sql = getDialect().buildDeleteSql(this);
+    tx.tableWritten(table);
+    tx.entitiesWritten(table, whereCondition);
+    String sql = getDialect().getDeleteSql(this);
 
     return executeUpdate(sql);
   }
 
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    super.collectSqlShape(sqlShape);
+    sqlShape.add(table);
+  }
+
   @Override
   public Delete where(Condition whereCondition) {
     return (Delete) super.where(whereCondition);
@@ -15,6 +15,12 @@
  */
 package be.tombaeyens.magicless.db;
 
+import be.tombaeyens.magicless.db.conditions.SeekCondition;
+import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.types.LongType;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +30,28 @@ import static java.util.stream.Collectors.joining;
 
 public class Dialect {
 
+  protected static final DataType PAGING_TYPE = new LongType();
+
+  /** cached version of {@link #buildSelectSql(Select)}, see {@link Db#getSqlCache()} */
+  public String getSelectSql(Select select) {
+    return select.tx.getDb().getSqlCache().getSql(select, this::buildSelectSql);
+  }
+
+  /** cached version of {@link #buildInsertSql(Insert)}, see {@link Db#getSqlCache()} */
+  public String getInsertSql(Insert insert) {
+    return insert.tx.getDb().getSqlCache().getSql(insert, this::buildInsertSql);
+  }
+
+  /** cached version of {@link #buildUpdateSql(Update)}, see {@link Db#getSqlCache()} */
+  public String getUpdateSql(Update update) {
+    return update.tx.getDb().getSqlCache().getSql(update, this::buildUpdateSql);
+  }
+
+  /** cached version of {@link #buildDeleteSql(Delete)}, see {@link Db#getSqlCache()} */
+  public String getDeleteSql(Delete delete) {
+    return delete.tx.getDb().getSqlCache().getSql(delete, this::buildDeleteSql);
+  }
+
   public String buildCreateTableSql(Table table) {
     return String.format("CREATE TABLE %s ( %s );",table.getName(), buildCreateTableColumnsSql(table));
   }
@@ -60,6 +88,47 @@ public class Dialect {
     return dataType.getDefaultSql();
   }
 
+  // INDEXES
+
+  public String buildCreateIndexSql(Index index) {
+    assertNotNull(index.getTable(), "Index %s is not added to a table", index.getName());
+    assertNotEmptyCollection(index.getColumns(), "columns of index "+index.getName());
+    List<Column> keyColumns = new ArrayList<>(index.getColumns());
+    List<Column> includeColumns = index.getIncludeColumns();
+    String includeSql = "";
+    if (!includeColumns.isEmpty()) {
+      if (supportsIndexInclude()) {
+        includeSql = " INCLUDE (" + buildColumnNamesSql(includeColumns) + ")";
+      } else if (!index.isUnique()) {
+        // appending them to the key still makes the index covering
+        keyColumns.addAll(includeColumns);
+      } else {
+        throw new RuntimeException("Unique index "+index.getName()+" can't include columns "
+          + buildColumnNamesSql(includeColumns)+": "+getClass().getSimpleName()
+          + " doesn't support INCLUDE and adding them to the key would change the uniqueness");
+      }
+    }
+    return "CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX " + index.getName()
+           + " ON " + index.getTable().getName()
+           + " (" + buildColumnNamesSql(keyColumns) + ")"
+           + includeSql + ";";
+  }
+
+  public String buildDropIndexSql(Index index) {
+    return "DROP INDEX " + index.getName() + ";";
+  }
+
+  /** true if CREATE INDEX supports INCLUDE (...) for covering indexes */
+  public boolean supportsIndexInclude() {
+    return false;
+  }
+
+  protected String buildColumnNamesSql(List<Column> columns) {
+    return columns.stream()
+      .map(Column::getName)
+      .collect(joining(", "));
+  }
+
   // SELECT
 
   public String buildSelectSql(Select select) {
@@ -67,9 +136,45 @@ public class Dialect {
            "FROM "+buildSelectFromsSql(select)+
            (select.hasWhereCondition() ? " \nWHERE "+ buildConditionSql(select.getWhereCondition(), select) : "")+
            (select.hasOrderBy() ? " \nORDER BY "+ buildOrderBySql(select.getOrderBy(), select) : "")+
+           buildPagingSql(select)+
            ";";
   }
 
+  /** limit and offset are passed as parameters so that the sql doesn't
+   * depend on their values.  See {@link #collectPagingParameters(Select, Parameters)} */
+  protected String buildPagingSql(Select select) {
+    return (select.getLimit()!=null ? " \nLIMIT ?" : "")+
+           (select.getOffset()!=null ? " OFFSET ?" : "");
+  }
+
+  /** adds the parameters for the ?s generated in {@link #buildPagingSql(Select)} */
+  public void collectPagingParameters(Select select, Parameters parameters) {
+    if (select.getLimit()!=null) {
+      parameters.addParameter(select.getLimit(), PAGING_TYPE);
+    }
+    if (select.getOffset()!=null) {
+      parameters.addParameter(select.getOffset(), PAGING_TYPE);
+    }
+  }
+
+  /** generates a row value comparison like <code>(a, b) &gt; (?, ?)</code> */
+  public String buildSeekConditionSql(SeekCondition seekCondition, Statement statement) {
+    List<Column> columns = seekCondition.getColumns();
+    String operator = seekCondition.isAscending() ? " > " : " < ";
+    if (columns.size()==1) {
+      return statement.getQualifiedColumnName(columns.get(0))+operator+"?";
+    }
+    return "("+
+           columns.stream()
+             .map(column->statement.getQualifiedColumnName(column))
+             .collect(joining(", "))+
+           ")"+operator+"("+
+           columns.stream()
+             .map(column->"?")
+             .collect(joining(", "))+
+           ")";
+  }
+
   private String buildOrderBySql(OrderBy orderBy, Select select) {
     return orderBy.getFieldDirections().stream()
       .map(direction->direction.getSelectField().buildSelectFieldSql(select)+" "+(direction.isAscending() ? "ASC" : "DESC" ))
@@ -133,6 +238,39 @@ public class Dialect {
           ");";
   }
 
+  public String buildBatchInsertSql(BatchInsert batchInsert, int rowCount) {
+    return buildInsertSql(batchInsert.getTable(), batchInsert.getColumns(), rowCount);
+  }
+
+  /** insert statement with rowCount rows in the VALUES clause */
+  public String buildInsertSql(Table table, List<Column> columns, int rowCount) {
+    String rowSql = "("+
+           columns.stream()
+              .map(column->"?")
+              .collect(joining(", "))+
+           ")";
+    StringBuilder sql = new StringBuilder();
+    sql.append("INSERT INTO "+table.getName()+" ("+
+           columns.stream()
+              .map(column->column.getName())
+              .collect(joining(", "))+
+           ") \nVALUES ");
+    for (int i=0; i<rowCount; i++) {
+      if (i!=0) {
+        sql.append(", \n       ");
+      }
+      sql.append(rowSql);
+    }
+    sql.append(";");
+    return sql.toString();
+  }
+
+  /** max number of ? parameters in a single statement.  Multi row
+   * inserts are split into multiple statements to stay below this limit. */
+  public int getMaxParametersPerStatement() {
+    return 2000;
+  }
+
   public String buildUpdateSql(Update update) {
     Table table = update.getTable();
     return
@@ -154,6 +292,33 @@ public class Dialect {
     return updateSet.toSql(update);
   }
 
+  /** true if the exception or one of its causes indicates that the
+   * transaction can succeed when it is executed again, see {@link RetryPolicy} */
+  public boolean isRetryable(Throwable exception) {
+    Throwable cause = exception;
+    while (cause!=null) {
+      if (cause instanceof SQLException && isRetryable((SQLException) cause)) {
+        return true;
+      }
+      cause = cause.getCause()!=cause ? cause.getCause() : null;
+    }
+    return false;
+  }
+
+  /** By default, SQLState class 40 (transaction rollback) which covers
+   * serialization failures (40001) and deadlocks (40P01 on PostgreSQL).
+   * Override to add vendor specific error codes. */
+  protected boolean isRetryable(SQLException exception) {
+    String sqlState = exception.getSQLState();
+    return sqlState!=null && sqlState.startsWith("40");
+  }
+
+  /** the sql that returns the query plan of the given sql or null if
+   * the database doesn't support it.  Used by the {@link SlowQueryLog}. */
+  public String buildExplainSql(String sql) {
+    return "EXPLAIN "+sql;
+  }
+
   public String buildDeleteSql(Delete delete) {
     Table table = delete.getTable();
     return
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+/** Index on one or more columns of a {@link Table}.
+ *
+ * Declare indexes with {@link Table#index(Index)} so that they are created
+ * by {@link CreateTable}.  Indexes on the columns of an existing table are
+ * created with {@link Tx#newCreateIndex(Index)}, typically in a
+ * {@link be.tombaeyens.magicless.db.schema.SchemaUpdate}, see
+ * {@link be.tombaeyens.magicless.db.schema.SchemaUpdate#createIndex(String, Index)}.
+ *
+ * Included columns make the index covering so that queries that select
+ * only indexed and included columns don't need to read the table rows.
+ * Dialects that don't support INCLUDE append them to the index columns
+ * of non unique indexes.  That would change the uniqueness of a unique
+ * index, so creating a unique index with included columns fails on those
+ * dialects, see {@link Dialect#supportsIndexInclude()}. */
+public class Index {
+
+  protected Table table;
+  protected String name;
+  protected List<Column> columns = new ArrayList<>();
+  protected List<Column> includeColumns = new ArrayList<>();
+  protected boolean unique;
+
+  public Index name(String name) {
+    this.name = name;
+    return this;
+  }
+
+  /** the default name is derived from the table and column names */
+  public String getName() {
+    if (name!=null) {
+      return name;
+    }
+    Table table = getTable();
+    return (table!=null ? table.getName()+"_" : "")
+           + columns.stream().map(Column::getName).collect(joining("_"))
+           + "_idx";
+  }
+
+  public Index column(Column column) {
+    columns.add(column);
+    return this;
+  }
+
+  public Index columns(Column... columns) {
+    for (Column column: columns) {
+      column(column);
+    }
+    return this;
+  }
+
+  /** Adds a column that is stored in the index but not part of the key.
+   * On dialects without INCLUDE support, the column is appended to the key
+   * of non unique indexes, and unique indexes with included columns can't
+   * be created. */
+  public Index include(Column column) {
+    includeColumns.add(column);
+    return this;
+  }
+
+  public Index unique() {
+    this.unique = true;
+    return this;
+  }
+
+  /** the table to which the index was added or otherwise the table of its first column */
+  public Table getTable() {
+    if (table==null && !columns.isEmpty()) {
+      return columns.get(0).getTable();
+    }
+    return table;
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  public List<Column> getIncludeColumns() {
+    return includeColumns;
+  }
+
+  public boolean isUnique() {
+    return unique;
+  }
+
+  @Override
+  public String toString() {
+    return "Index(" + getName() + ")";
+  }
+}
@@ -16,6 +16,7 @@
 package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -66,7 +67,8 @@ public class Insert extends Statement {
   }
 
   public int execute() {
-    String sql = getDialect().buildInsertSql(this);
+    tx.tableWritten(table);
+    String sql = getDialect().getInsertSql(this);
     return executeUpdate(sql);
   }
 
@@ -76,6 +78,13 @@ public class Insert extends Statement {
       .forEach(columnValue -> parameters.addParameter(columnValue.getValue(), columnValue.getColumn().getType()));
   }
 
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    super.collectSqlShape(sqlShape);
+    sqlShape.add(table);
+    columnValues.forEach(columnValue->sqlShape.add(columnValue.getColumn()));
+  }
+
   protected String getPastTense() {
     return "Inserted";
   }
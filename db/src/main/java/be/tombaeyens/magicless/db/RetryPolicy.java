@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Determines how {@link Db#tx(TxLogic)} re-executes transactions that
+ * failed with a retryable exception like a deadlock or a serialization
+ * failure, see {@link Dialect#isRetryable(Throwable)}.
+ *
+ * The whole {@link TxLogic} is executed again in a new transaction so it
+ * must not have side effects outside of the transaction.
+ *
+ * The backoff between attempts grows exponentially and is randomized
+ * (full jitter) so that the competing transactions don't collide again. */
+public class RetryPolicy {
+
+  public static final int DEFAULT_MAX_ATTEMPTS = 1;
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 10;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+
+  protected int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+  protected long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+  protected long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+  protected LongAdder retries = new LongAdder();
+  protected LongAdder retrySuccesses = new LongAdder();
+  protected LongAdder retriesExhausted = new LongAdder();
+
+  /** total number of executions of a transaction, including the first.
+   * 1 (default) means transactions are not retried. */
+  public RetryPolicy maxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  public RetryPolicy initialBackoffMillis(long initialBackoffMillis) {
+    this.initialBackoffMillis = initialBackoffMillis;
+    return this;
+  }
+
+  public RetryPolicy maxBackoffMillis(long maxBackoffMillis) {
+    this.maxBackoffMillis = maxBackoffMillis;
+    return this;
+  }
+
+  /** random backoff before the next attempt
+   * @param attempt the attempt that failed, starting from 1 */
+  public long getBackoffMillis(int attempt) {
+    long maxBackoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+    if (maxBackoff<=0 || maxBackoff>maxBackoffMillis) {
+      maxBackoff = maxBackoffMillis;
+    }
+    return ThreadLocalRandom.current().nextLong(maxBackoff + 1);
+  }
+
+  protected void retrying() {
+    retries.increment();
+  }
+
+  protected void retrySucceeded() {
+    retrySuccesses.increment();
+  }
+
+  protected void retriesExhausted() {
+    retriesExhausted.increment();
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getInitialBackoffMillis() {
+    return initialBackoffMillis;
+  }
+
+  public long getMaxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  /** number of times a transaction was executed again */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  /** number of transactions that succeeded after one or more retries */
+  public long getRetrySuccessCount() {
+    return retrySuccesses.sum();
+  }
+
+  /** number of transactions that still failed with a retryable exception after max attempts */
+  public long getRetriesExhaustedCount() {
+    return retriesExhausted.sum();
+  }
+}
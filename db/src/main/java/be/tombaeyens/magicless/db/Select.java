@@ -16,11 +16,26 @@
 package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.app.util.Exceptions;
+import be.tombaeyens.magicless.db.conditions.SeekCondition;
+import be.tombaeyens.magicless.db.bulk.BulkExport;
+import be.tombaeyens.magicless.db.bulk.BulkFormat;
+import be.tombaeyens.magicless.db.bulk.BulkReport;
+import be.tombaeyens.magicless.db.conditions.EqualCondition;
+import be.tombaeyens.magicless.db.impl.EntityCache;
+import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.QueryCache;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNull;
 import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNullParameter;
@@ -30,6 +45,10 @@ public class Select extends Statement {
   List<SelectField> fields = new ArrayList<>();
   List<Table> froms = new ArrayList<>();
   OrderBy orderBy;
+  int fetchSize = 0;
+  Integer limit;
+  Long offset;
+  Long cacheTtlMillis;
 
   public Select(Tx tx) {
     super(tx);
@@ -50,11 +69,165 @@ public class Select extends Statement {
       }
     }
 
-    String sql = getDialect().buildSelectSql(this);
+    String sql = getDialect().getSelectSql(this);
 
+    // reads in a transaction that has written to the tables must see those writes
+    if (!tx.hasWrittenTo(froms)) {
+      EntityCache entityCache = getEntityCacheForPrimaryKeyLookup();
+      if (entityCache!=null) {
+        return executeEntityCached(sql, entityCache);
+      }
+      if (cacheTtlMillis!=null) {
+        return executeCached(sql);
+      }
+    }
     return executeQuery(this, sql);
   }
 
+  /** Returns the entity cache if this select is a pure primary key lookup
+   * in a table that has an entity cache.  Otherwise null. */
+  protected EntityCache getEntityCacheForPrimaryKeyLookup() {
+    if (froms.size()!=1
+        || !(whereCondition instanceof EqualCondition)
+        || limit!=null
+        || offset!=null) {
+      return null;
+    }
+    Table table = froms.get(0);
+    EntityCache entityCache = tx.getDb().getEntityCache(table);
+    if (entityCache==null
+        || EqualCondition.findPrimaryKeyValue(whereCondition)==null
+        || ((EqualCondition)whereCondition).getColumn().getTable()!=table) {
+      return null;
+    }
+    for (SelectField field: fields) {
+      if (!(field instanceof Column) || ((Column)field).getTable()!=table) {
+        return null;
+      }
+    }
+    return entityCache;
+  }
+
+  protected SelectResults executeEntityCached(String sql, EntityCache entityCache) {
+    Object primaryKey = EqualCondition.findPrimaryKeyValue(whereCondition);
+    Object[] entityRow = entityCache.get(primaryKey);
+    if (entityRow!=null) {
+      tx.logSQL("Cached entity "+primaryKey+" for \n"+sql);
+      Object[] row = new Object[fields.size()];
+      for (int i=0; i<row.length; i++) {
+        row[i] = entityRow[((Column)fields.get(i)).getIndex()];
+      }
+      return new SelectResults(this, Collections.singletonList(row), sql);
+    }
+    long version = entityCache.getVersion();
+    List<Object[]> rows;
+    try (SelectResults selectResults = executeQuery(this, sql)) {
+      rows = selectResults.readRows();
+    }
+    // only complete rows can be cached.  Replicas may lag behind so
+    // their rows could be older than the last cache invalidation.  Above
+    // read committed, the tx may read a snapshot from before the last
+    // invalidation which must not be cached under the current version.
+    Table table = froms.get(0);
+    if (rows.size()==1
+        && fields.containsAll(table.getColumns().values())
+        && !tx.isReplica()
+        && tx.getIsolation()<=Connection.TRANSACTION_READ_COMMITTED) {
+      Object[] row = rows.get(0);
+      entityRow = new Object[table.getColumns().size()];
+      for (int i=0; i<row.length; i++) {
+        entityRow[((Column)fields.get(i)).getIndex()] = row[i];
+      }
+      entityCache.put(primaryKey, entityRow, version);
+    }
+    return new SelectResults(this, rows, sql);
+  }
+
+  protected SelectResults executeCached(String sql) {
+    QueryCache queryCache = tx.getDb().getQueryCache();
+    Parameters parameters = new Parameters();
+    collectParameters(parameters);
+    QueryCache.Key key = new QueryCache.Key(sql, parameters.getValues());
+    QueryCache.Entry entry = queryCache.get(key);
+    if (entry!=null) {
+      tx.logSQL("Cached results of \n"+sql);
+      return new SelectResults(this, entry.getRows(), sql);
+    }
+    Table[] tables = froms.toArray(new Table[froms.size()]);
+    long[] tableVersions = queryCache.getTableVersions(tables);
+    List<Object[]> rows;
+    try (SelectResults selectResults = executeQuery(this, sql)) {
+      rows = selectResults.readRows();
+    }
+    if (!tx.isReplica()) {
+      queryCache.put(key, rows, cacheTtlMillis, tables, tableVersions);
+    }
+    return new SelectResults(this, rows, sql);
+  }
+
+  /** Serve the results from the {@link Db#getQueryCache()} for at most ttl.
+   * Cached results are invalidated when a transaction commits that has
+   * inserted, updated or deleted in one of the tables of this select
+   * through the same Db.  Writes through other Dbs or other
+   * processes are not detected. */
+  public Select cached(Duration ttl) {
+    this.cacheTtlMillis = ttl.toMillis();
+    return this;
+  }
+
+  /** streams the results as CSV or NDJSON to the outputStream, see {@link BulkExport} */
+  public BulkReport export(BulkFormat format, OutputStream outputStream) {
+    return new BulkExport(this)
+      .format(format)
+      .execute(outputStream);
+  }
+
+  /** Executes the select and streams the results with a forward only, read only cursor.
+   * Use a {@link #fetchSize(int)} to read large results in constant memory.
+   * Use try-with-resources in case the stream is not read until the end:
+   * <pre>
+   * try (Stream&lt;SelectResults&gt; rows = tx.newSelect(TABLE).fetchSize(1000).stream()) {
+   *   rows.forEach(...);
+   * }
+   * </pre> */
+  public Stream<SelectResults> stream() {
+    return execute().stream();
+  }
+
+  /** number of rows that the JDBC driver fetches from the database at once.
+   * 0 (the default) lets the driver decide, which may mean that all rows are fetched. */
+  public Select fetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+    return this;
+  }
+
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    super.collectSqlShape(sqlShape);
+    sqlShape.add(fields.size());
+    fields.forEach(field->sqlShape.add(field));
+    sqlShape.add(froms.size());
+    froms.forEach(from->sqlShape.add(from));
+    if (hasOrderBy()) {
+      orderBy.getFieldDirections().forEach(direction->{
+        sqlShape.add(direction.getSelectField());
+        sqlShape.add(direction.isAscending());
+      });
+    }
+    sqlShape.add(limit!=null);
+    sqlShape.add(offset!=null);
+  }
+
+  @Override
+  protected void collectParameters(Parameters parameters) {
+    super.collectParameters(parameters);
+    getDialect().collectPagingParameters(this, parameters);
+  }
+
   private String findNextAlias(Set<String> aliases) {
     int i = aliases.size()+1;
     while (aliases.contains("T"+i)) {
@@ -125,9 +298,10 @@ public class Select extends Statement {
     return (Select) super.where(whereCondition);
   }
 
-
-
-  /** Returns JDBC (meaning starts at 1) index of the results. */
+  /** Returns JDBC (meaning starts at 1) index of the results.
+   * @deprecated scans the fields on every call, {@link SelectResults}
+   * resolves the column positions once when the query executes. */
+  @Deprecated
   public Integer getSelectorJdbcIndex(Column column) {
     for (int i = 0; i<fields.size(); i++) {
       SelectField selectField = fields.get(i);
@@ -138,6 +312,57 @@ public class Select extends Statement {
     return null;
   }
 
+  /** max number of rows to return */
+  public Select limit(int limit) {
+    this.limit = limit;
+    return this;
+  }
+
+  /** number of rows to skip.  The database still has to read the skipped rows,
+   * so for deep pages, prefer {@link #seekAfter(Column[], Object...)} */
+  public Select offset(long offset) {
+    this.offset = offset;
+    return this;
+  }
+
+  /** Keyset pagination: orders by the given columns ascending and selects the
+   * rows after lastValues, which are the values of the orderColumns in the
+   * last row of the previous page.  Pass no lastValues for the first page.
+   * With an index on the orderColumns, each page costs the same as the first one.
+   * <pre>
+   * tx.newSelect(Users.TABLE)
+   *   .seekAfter(new Column[]{Users.LAST_NAME, Users.ID}, lastUser.getLastName(), lastUser.getId())
+   *   .limit(50)
+   *   .execute()
+   * </pre> */
+  public Select seekAfter(Column[] orderColumns, Object... lastValues) {
+    return seek(orderColumns, lastValues, true);
+  }
+
+  /** Same as {@link #seekAfter(Column[], Object...)}, but for descending ordering. */
+  public Select seekBefore(Column[] orderColumns, Object... lastValues) {
+    return seek(orderColumns, lastValues, false);
+  }
+
+  protected Select seek(Column[] orderColumns, Object[] lastValues, boolean ascending) {
+    Exceptions.assertNotEmptyArray(orderColumns, "orderColumns");
+    if (lastValues!=null && lastValues.length>0) {
+      where(new SeekCondition(Arrays.asList(orderColumns), Arrays.asList(lastValues), ascending));
+    }
+    for (Column orderColumn: orderColumns) {
+      addOrderBy(ascending ? new OrderBy.Ascending(orderColumn) : new OrderBy.Descending(orderColumn));
+    }
+    return this;
+  }
+
+  public Integer getLimit() {
+    return limit;
+  }
+
+  public Long getOffset() {
+    return offset;
+  }
+
   public Select orderAsc(SelectField selectField) {
     addOrderBy(new OrderBy.Ascending(selectField));
     return this;
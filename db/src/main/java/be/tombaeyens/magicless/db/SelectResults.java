@@ -16,9 +16,15 @@
 package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.app.util.Exceptions;
+import be.tombaeyens.magicless.db.types.ClobReader;
+import be.tombaeyens.magicless.db.types.JsonType;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -28,20 +34,91 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNull;
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
 
-public class SelectResults {
+/** Results of a {@link Select}.  The JDBC resources are released when all rows
+ * are read, when {@link #close()} is called or when the stream is closed.
+ * Results that are still open when the transaction ends are closed then. */
+public class SelectResults implements AutoCloseable {
 
   Select select;
+  PreparedStatement statement;
   ResultSet resultSet;
   String sql;
   SelectLogger selectLogger;
+  boolean closed = false;
+  boolean wasNull = false;
+  /** the tables of the selected columns */
+  Table[] tables;
+  /** per table in {@link #tables}, maps {@link Column#getIndex()} to the JDBC index. 0 means not selected. */
+  int[][] jdbcIndexes;
+  /** when the results come from the {@link Db#getQueryCache()}, the rows are
+   * materialized and there is no result set */
+  List<Object[]> rows;
+  int rowIndex = -1;
+  /** not null if there are {@link StatementListener}s */
+  StatementExecution execution;
+  int rowCount = 0;
 
-  public SelectResults(Select select, ResultSet resultSet, String sql) {
+  public SelectResults(Select select, PreparedStatement statement, ResultSet resultSet, String sql) {
     this.select = select;
+    this.statement = statement;
     this.resultSet = resultSet;
     this.sql = sql;
-    this.selectLogger = new SelectLogger(this);
+    this.selectLogger = select.getTx().getDb().createSelectLogger(this);
+    initializeJdbcIndexes();
+    select.getTx().resultsOpened(this);
+  }
+
+  /** results over materialized rows, see {@link Select#cached(java.time.Duration)} */
+  public SelectResults(Select select, List<Object[]> rows, String sql) {
+    this.select = select;
+    this.rows = rows;
+    this.sql = sql;
+    this.selectLogger = select.getTx().getDb().createSelectLogger(this);
+    initializeJdbcIndexes();
+  }
+
+  /** resolves the column positions once so that reading a value doesn't
+   * require a scan over the select fields */
+  protected void initializeJdbcIndexes() {
+    List<Table> selectTables = new ArrayList<>();
+    List<int[]> selectJdbcIndexes = new ArrayList<>();
+    List<SelectField> fields = select.getFields();
+    for (int i=0; i<fields.size(); i++) {
+      SelectField field = fields.get(i);
+      if (field instanceof Column) {
+        Column column = (Column) field;
+        Table table = column.getTable();
+        int tableIndex = selectTables.indexOf(table);
+        if (tableIndex==-1) {
+          tableIndex = selectTables.size();
+          selectTables.add(table);
+          selectJdbcIndexes.add(new int[table.getColumns().size()]);
+        }
+        int[] tableJdbcIndexes = selectJdbcIndexes.get(tableIndex);
+        if (tableJdbcIndexes[column.getIndex()]==0) {
+          tableJdbcIndexes[column.getIndex()] = i+1;
+        }
+      }
+    }
+    this.tables = selectTables.toArray(new Table[selectTables.size()]);
+    this.jdbcIndexes = selectJdbcIndexes.toArray(new int[selectJdbcIndexes.size()][]);
+  }
+
+  /** Returns JDBC (meaning starts at 1) index of the column in the results. */
+  protected int getJdbcIndex(Column column) {
+    Table table = column.getTable();
+    for (int i=0; i<tables.length; i++) {
+      if (tables[i]==table) {
+        int jdbcIndex = jdbcIndexes[i][column.getIndex()];
+        if (jdbcIndex!=0) {
+          return jdbcIndex;
+        }
+        break;
+      }
+    }
+    throw new RuntimeException("Could find index position of results "+column+" in select \n"+sql);
   }
 
   public <T> List<T> getAll(Function<SelectResults, T> mapper) {
@@ -52,22 +129,28 @@ public class SelectResults {
 
   public boolean next() {
     try {
-      boolean hasNext = resultSet.next();
+      boolean hasNext = rows!=null ? ++rowIndex<rows.size() : resultSet.next();
       selectLogger.nextRow(hasNext);
+      if (hasNext) {
+        rowCount++;
+      } else {
+        close();
+      }
       return hasNext;
     } catch (SQLException e) {
       throw Exceptions.exceptionWithCause("get next() on JDBC result set for select \n"+sql, e);
     }
   }
 
+  @SuppressWarnings("unchecked")
   public <T> T get(SelectField selectField) {
     if (selectField instanceof Column) {
       Column column = (Column) selectField;
-      Integer index = select.getSelectorJdbcIndex(column);
-      assertNotNull(index, "Could find index position of results "+column+" in select \n"+sql);
+      int index = getJdbcIndex(column);
       DataType type = column.getType();
-      T value = type.getResultSetValue(index, resultSet);
-      selectLogger.setValue(index-1, type.toLogText(value));
+      T value = rows!=null ? type.fromRowValue(rows.get(rowIndex)[index-1]) : type.getResultSetValue(index, resultSet);
+      wasNull = value==null;
+      selectLogger.setValue(index-1, type, value);
       return value;
     } else {
       Exceptions.assertNotNullParameter(selectField, "selectField");
@@ -75,6 +158,186 @@ public class SelectResults {
     }
   }
 
+  /** Passes the character stream of a CLOB column like {@link Column#typeJson()}
+   * to the clobReader so that large documents can be parsed, eg with a Gson
+   * JsonReader, without reading them into a String first.  The reader is only
+   * valid during the callback.  Returns null without invoking the clobReader
+   * if the value is null. */
+  public <T> T read(Column column, ClobReader<T> clobReader) {
+    int index = getJdbcIndex(column);
+    if (rows!=null) {
+      String value = (String) getRowValue(index, column);
+      try {
+        return value!=null ? clobReader.read(new StringReader(value)) : null;
+      } catch (IOException e) {
+        throw exceptionWithCause("read cached clob value of "+column, e);
+      }
+    }
+    DataType type = column.getType();
+    if (!(type instanceof JsonType)) {
+      throw new RuntimeException("Column "+column+" is not a clob");
+    }
+    T value = ((JsonType) type).read(index, resultSet, clobReader);
+    wasNull = value==null;
+    selectLogger.setValue(index-1, type, value!=null ? "(streamed)" : null);
+    return value;
+  }
+
+  /** Returns the long value of the column or 0 if the value is null.
+   * Use {@link #wasNull()} to distinguish between 0 and null. */
+  public long getLong(Column column) {
+    return getLong(column, 0);
+  }
+
+  /** Returns the long value of the column or the nullValue if the value is null. */
+  public long getLong(Column column, long nullValue) {
+    int index = getJdbcIndex(column);
+    if (rows!=null) {
+      Number value = (Number) getRowValue(index, column);
+      return value!=null ? value.longValue() : nullValue;
+    }
+    try {
+      long value = resultSet.getLong(index);
+      wasNull = resultSet.wasNull();
+      if (selectLogger.isEnabled()) {
+        selectLogger.setValue(index-1, column.getType(), wasNull ? null : value);
+      }
+      return wasNull ? nullValue : value;
+    } catch (SQLException e) {
+      throw exceptionWithCause("get JDBC long value "+column+" from result set", e);
+    }
+  }
+
+  /** Returns the int value of the column or 0 if the value is null.
+   * Use {@link #wasNull()} to distinguish between 0 and null. */
+  public int getInt(Column column) {
+    return getInt(column, 0);
+  }
+
+  /** Returns the int value of the column or the nullValue if the value is null. */
+  public int getInt(Column column, int nullValue) {
+    int index = getJdbcIndex(column);
+    if (rows!=null) {
+      Number value = (Number) getRowValue(index, column);
+      return value!=null ? value.intValue() : nullValue;
+    }
+    try {
+      int value = resultSet.getInt(index);
+      wasNull = resultSet.wasNull();
+      if (selectLogger.isEnabled()) {
+        selectLogger.setValue(index-1, column.getType(), wasNull ? null : value);
+      }
+      return wasNull ? nullValue : value;
+    } catch (SQLException e) {
+      throw exceptionWithCause("get JDBC int value "+column+" from result set", e);
+    }
+  }
+
+  /** Returns the double value of the column or 0 if the value is null.
+   * Use {@link #wasNull()} to distinguish between 0 and null. */
+  public double getDouble(Column column) {
+    return getDouble(column, 0);
+  }
+
+  /** Returns the double value of the column or the nullValue if the value is null. */
+  public double getDouble(Column column, double nullValue) {
+    int index = getJdbcIndex(column);
+    if (rows!=null) {
+      Number value = (Number) getRowValue(index, column);
+      return value!=null ? value.doubleValue() : nullValue;
+    }
+    try {
+      double value = resultSet.getDouble(index);
+      wasNull = resultSet.wasNull();
+      if (selectLogger.isEnabled()) {
+        selectLogger.setValue(index-1, column.getType(), wasNull ? null : value);
+      }
+      return wasNull ? nullValue : value;
+    } catch (SQLException e) {
+      throw exceptionWithCause("get JDBC double value "+column+" from result set", e);
+    }
+  }
+
+  /** Returns the boolean value of the column or false if the value is null.
+   * Use {@link #wasNull()} to distinguish between false and null. */
+  public boolean getBoolean(Column column) {
+    return getBoolean(column, false);
+  }
+
+  /** Returns the boolean value of the column or the nullValue if the value is null. */
+  public boolean getBoolean(Column column, boolean nullValue) {
+    int index = getJdbcIndex(column);
+    if (rows!=null) {
+      Boolean value = (Boolean) getRowValue(index, column);
+      return value!=null ? value.booleanValue() : nullValue;
+    }
+    try {
+      boolean value = resultSet.getBoolean(index);
+      wasNull = resultSet.wasNull();
+      if (selectLogger.isEnabled()) {
+        selectLogger.setValue(index-1, column.getType(), wasNull ? null : value);
+      }
+      return wasNull ? nullValue : value;
+    } catch (SQLException e) {
+      throw exceptionWithCause("get JDBC boolean value "+column+" from result set", e);
+    }
+  }
+
+  private Object getRowValue(int index, Column column) {
+    Object value = rows.get(rowIndex)[index-1];
+    wasNull = value==null;
+    selectLogger.setValue(index-1, column.getType(), value);
+    return value;
+  }
+
+  /** reads all the remaining rows into memory */
+  protected List<Object[]> readRows() {
+    List<SelectField> fields = select.getFields();
+    List<Object[]> rows = new ArrayList<>();
+    while (next()) {
+      Object[] row = new Object[fields.size()];
+      for (int i=0; i<row.length; i++) {
+        DataType type = fields.get(i).getType();
+        row[i] = type.getRowValue(i+1, resultSet);
+        selectLogger.setValue(i, type, row[i]);
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  /** true if the last value read with one of the get methods was null */
+  public boolean wasNull() {
+    return wasNull;
+  }
+
+  /** Closes the JDBC result set and releases the prepared statement.
+   * This is done automatically when {@link #next()} returns false.  In case
+   * not all results are read, call this method to release the resources
+   * before the transaction ends. */
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      if (resultSet!=null) {
+        try {
+          resultSet.close();
+        } catch (SQLException e) {
+          Db.DB_LOGGER.error("Couldn't close result set: " + e.getMessage(), e);
+        }
+        select.releasePreparedStatement(sql, statement);
+        select.getTx().resultsClosed(this);
+        if (execution!=null) {
+          execution.finished(rowCount);
+        }
+      }
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
 //  /** normally this is triggered automatically by the last .next() called on
 //   * which returns false.  But in case .next() is not called in a
 //   * while loop and never returns false, you can call this manually. */
@@ -112,7 +375,14 @@ public class SelectResults {
     }
   }
 
+  /** Closing the stream closes the results.  Use try-with-resources in case
+   * the stream is not read until the end. */
   public Stream<SelectResults> stream() {
-    return StreamSupport.stream(new SelectResultsSpliterator(),false);
+    return StreamSupport.stream(new SelectResultsSpliterator(),false)
+      .onClose(this::close);
+  }
+
+  public String getSql() {
+    return sql;
   }
 }
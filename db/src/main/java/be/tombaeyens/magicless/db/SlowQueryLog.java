@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.pool.ConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Logs selects, updates and deletes that take longer than a threshold to
+ * {@link #SLOW_QUERY_LOGGER} with the bound sql, duration, row count and Tx.
+ *
+ * Configure with {@link DbConfiguration#slowQueryThresholdMillis(long)}.
+ * The threshold applies to {@link StatementExecution#getExecuteNanos()} so
+ * that time spent by the application while iterating select results,
+ * eg in streaming, paging or exports, doesn't make a query slow.
+ *
+ * Slow queries are most frequent when the database is struggling so
+ * this log is kept cheap: only a sample of the slow executions is logged
+ * and at most {@link DbConfiguration#slowQueryMaxPerMinute(int)} per minute.
+ * The number of suppressed slow queries is logged when the next minute starts.
+ *
+ * Optionally the query plan is captured with EXPLAIN on a separate connection.
+ * That happens in a single background thread with a small queue.  Explains
+ * that don't fit in the queue are skipped, and so are explains while threads
+ * are waiting for a connection of the pool: then an explain would only add
+ * to the contention and could block until the acquire timeout. */
+public class SlowQueryLog implements StatementListener {
+
+  public static final Logger SLOW_QUERY_LOGGER = LoggerFactory.getLogger("be.tombaeyens.magicless.db.SlowQueries");
+
+  static final long WINDOW_MILLIS = 60000;
+
+  protected Db db;
+  protected long thresholdNanos;
+  protected double sampleRate;
+  protected int maxPerMinute;
+  protected ThreadPoolExecutor explainExecutor;
+
+  protected AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+  protected AtomicInteger windowCount = new AtomicInteger();
+  protected LongAdder suppressed = new LongAdder();
+  protected LongAdder logged = new LongAdder();
+
+  public SlowQueryLog(Db db, DbConfiguration dbConfiguration) {
+    this.db = db;
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(dbConfiguration.getSlowQueryThresholdMillis());
+    this.sampleRate = dbConfiguration.getSlowQuerySampleRate();
+    this.maxPerMinute = dbConfiguration.getSlowQueryMaxPerMinute();
+    if (dbConfiguration.isSlowQueryExplain()) {
+      this.explainExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(10),
+        runnable->{
+          Thread thread = new Thread(runnable, "slow-query-explain");
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.DiscardPolicy());
+      this.explainExecutor.allowCoreThreadTimeOut(true);
+    }
+  }
+
+  @Override
+  public void afterExecute(StatementExecution execution) {
+    if (execution.getExecuteNanos()<thresholdNanos
+        || !isLogged(execution.getStatement())
+        || (sampleRate<1d && ThreadLocalRandom.current().nextDouble()>=sampleRate)
+        || !acquirePermit()) {
+      return;
+    }
+    String message = buildMessage(execution);
+    if (explainExecutor!=null) {
+      String sql = execution.getSql();
+      Parameters parameters = execution.getParameters();
+      explainExecutor.execute(()->log(message + "\n" + explain(sql, parameters)));
+    } else {
+      log(message);
+    }
+  }
+
+  protected boolean isLogged(Statement statement) {
+    return statement instanceof Select
+           || statement instanceof Update
+           || statement instanceof Delete;
+  }
+
+  /** rate limit: at most maxPerMinute log entries per minute window */
+  protected boolean acquirePermit() {
+    long now = System.currentTimeMillis();
+    long start = windowStart.get();
+    if (now - start >= WINDOW_MILLIS && windowStart.compareAndSet(start, now)) {
+      windowCount.set(0);
+      long suppressedCount = suppressed.sumThenReset();
+      if (suppressedCount>0) {
+        SLOW_QUERY_LOGGER.warn(suppressedCount + " slow queries were not logged in the last minute");
+      }
+    }
+    if (windowCount.incrementAndGet()>maxPerMinute) {
+      suppressed.increment();
+      return false;
+    }
+    return true;
+  }
+
+  protected String buildMessage(StatementExecution execution) {
+    String sql = execution.getSql();
+    Parameters parameters = execution.getParameters();
+    String boundSql = parameters!=null ? parameters.toLogSql(sql) : sql;
+    return "Slow " + execution.getStatement().getClass().getSimpleName()
+      + " in " + execution.getTx()
+      + " took " + TimeUnit.NANOSECONDS.toMillis(execution.getExecuteNanos()) + "ms"
+      + (execution.getDurationNanos()>execution.getExecuteNanos()
+         ? " (" + TimeUnit.NANOSECONDS.toMillis(execution.getDurationNanos()) + "ms until the results were closed)"
+         : "")
+      + (execution.isFailed()
+         ? " and failed: " + execution.getException().getMessage()
+         : ", " + execution.getRowCount() + " rows")
+      + "\n" + boundSql;
+  }
+
+  protected void log(String message) {
+    logged.increment();
+    SLOW_QUERY_LOGGER.warn(message);
+  }
+
+  /** captures the query plan on a separate connection so that the plan
+   * doesn't interfere with the transaction that executed the statement */
+  protected String explain(String sql, Parameters parameters) {
+    String explainSql = db.getDialect().buildExplainSql(sql);
+    if (explainSql==null) {
+      return "No query plan: EXPLAIN not supported by "+db.getDialect().getClass().getSimpleName();
+    }
+    ConnectionPool connectionPool = db.getConnectionPool();
+    if (connectionPool.getStats().getWaiting()>0) {
+      return "No query plan: threads are waiting for a connection";
+    }
+    try (Connection connection = connectionPool.getConnection();
+         PreparedStatement statement = connection.prepareStatement(explainSql)) {
+      if (parameters!=null) {
+        parameters.apply(statement);
+      }
+      StringBuilder plan = new StringBuilder("Query plan:");
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          plan.append("\n");
+          plan.append(resultSet.getString(1));
+        }
+      }
+      return plan.toString();
+    } catch (Exception e) {
+      return "No query plan: " + e.getMessage();
+    }
+  }
+
+  /** number of slow queries that were logged */
+  public long getLoggedCount() {
+    return logged.sum();
+  }
+
+  /** number of slow queries in the current minute window that were not logged because of the rate limit */
+  public long getSuppressedCount() {
+    return suppressed.sum();
+  }
+
+  public void close() {
+    if (explainExecutor!=null) {
+      explainExecutor.shutdownNow();
+    }
+  }
+}
@@ -17,11 +17,13 @@ package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.db.conditions.AndCondition;
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
@@ -37,53 +39,102 @@ public class Statement {
     this.tx = tx;
   }
 
+  /** The returned statement must be released with {@link #releasePreparedStatement(String, PreparedStatement)} */
   protected PreparedStatement createPreparedStatement(String sql) {
     PreparedStatement statement = null;
     try {
       statement = tx
-        .getConnection()
-        .prepareStatement(sql);
+        .getStatementCache()
+        .checkOut(sql);
     } catch (SQLException e) {
       throw exceptionWithCause("prepare "+getClass().getSimpleName().toUpperCase()+" statement: \n"+sql, e);
     }
     return statement;
   }
 
+  protected void releasePreparedStatement(String sql, PreparedStatement statement) {
+    tx.getStatementCache().checkIn(sql, statement);
+  }
+
   protected int executeUpdate(String sql) {
     PreparedStatement statement = createPreparedStatement(sql);
+    StatementExecution execution = null;
     try {
       Parameters parameters = new Parameters();
       collectParameters(parameters);
       parameters.apply(statement);
-      tx.logSQL(parameters.toLogSql(sql));
+      if (DB_LOGGER.isDebugEnabled()) {
+        tx.logSQL(parameters.toLogSql(sql));
+      }
+      execution = startExecution(sql, parameters, parameters.size());
       int updateCount = statement.executeUpdate();
+      if (execution!=null) {
+        execution.finished(updateCount);
+      }
       DB_LOGGER.debug(tx + " " + getPastTense() + " " + updateCount + " rows");
       return updateCount;
     } catch (SQLException e) {
+      if (execution!=null) {
+        execution.failed(e);
+      }
       throw exceptionWithCause("execute "+getClass().getSimpleName()+" \n"+sql+"\n-->", e);
     } finally {
-      try {
-        statement.close();
-      } catch (SQLException e) {
-        e.printStackTrace();
-      }
+      tx.freeTemporaryClobs();
+      releasePreparedStatement(sql, statement);
     }
   }
 
   protected SelectResults executeQuery(Select select, String sql) {
     PreparedStatement statement = createPreparedStatement(sql);
+    StatementExecution execution = null;
+    ResultSet resultSet = null;
     try {
       Parameters parameters = new Parameters();
       collectParameters(parameters);
       parameters.apply(statement);
-      tx.logSQL(parameters.toLogSql(sql));
-      ResultSet resultSet = statement.executeQuery();
-      return new SelectResults(select, resultSet, sql);
-    } catch (SQLException e) {
+      if (DB_LOGGER.isDebugEnabled()) {
+        tx.logSQL(parameters.toLogSql(sql));
+      }
+      // also for reused statements, as they may have a fetch size of a previous execution
+      statement.setFetchSize(select.getFetchSize());
+      execution = startExecution(sql, parameters, parameters.size());
+      resultSet = statement.executeQuery();
+      if (execution!=null) {
+        execution.executed();
+      }
+      SelectResults selectResults = new SelectResults(select, statement, resultSet, sql);
+      selectResults.execution = execution;
+      return selectResults;
+    } catch (SQLException | RuntimeException e) {
+      if (execution!=null) {
+        execution.failed(e);
+      }
+      if (resultSet!=null) {
+        try {
+          resultSet.close();
+        } catch (SQLException closeException) {
+          e.addSuppressed(closeException);
+        }
+      }
+      releasePreparedStatement(sql, statement);
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
       throw exceptionWithCause("execute query \n"+sql+"\n-->", e);
+    } finally {
+      tx.freeTemporaryClobs();
     }
   }
 
+  /** notifies the {@link Db#getStatementListeners()} and returns the execution
+   * or returns null if there are no listeners. */
+  protected StatementExecution startExecution(String sql, Parameters parameters, int parameterCount) {
+    List<StatementListener> listeners = tx.getDb().getStatementListeners();
+    return !listeners.isEmpty()
+      ? new StatementExecution(tx, this, sql, parameters, parameterCount, listeners)
+      : null;
+  }
+
   /** override if the statement sets parameters and ensure that the
    * ordering of parameters corresponds to the ordering of the ?
    * that were generated in the sql */
@@ -93,6 +144,24 @@ public class Statement {
     }
   }
 
+  /** override if the statement has other properties that influence the
+   * generated sql.  Parameter values must not be added as they don't change
+   * the sql.  Used to cache the sql, see {@link Db#getSqlCache()} */
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(getClass());
+    if (aliases!=null) {
+      aliases.forEach((table, alias)->{
+        sqlShape.add(table);
+        sqlShape.add(alias);
+      });
+    }
+    if (whereCondition!=null) {
+      whereCondition.collectSqlShape(sqlShape);
+    } else {
+      sqlShape.add(null);
+    }
+  }
+
   protected String getPastTense() {
     return getClass().getSimpleName()+"d";
   }
@@ -138,7 +207,7 @@ public class Statement {
     return whereCondition!=null;
   }
 
-  protected Dialect getDialect() {
+  public Dialect getDialect() {
     return tx.getDb().getDialect();
   }
 }
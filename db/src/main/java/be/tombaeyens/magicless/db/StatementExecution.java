@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import be.tombaeyens.magicless.db.impl.Parameters;
+
+import java.util.List;
+
+/** A single JDBC execution of a {@link Statement} as passed to {@link StatementListener}s. */
+public class StatementExecution {
+
+  Tx tx;
+  Statement statement;
+  String sql;
+  Parameters parameters;
+  int parameterCount;
+  List<StatementListener> listeners;
+  long startNanos;
+  long executeNanos = -1;
+  long endNanos = -1;
+  int rowCount = -1;
+  Exception exception;
+
+  StatementExecution(Tx tx, Statement statement, String sql, Parameters parameters, int parameterCount, List<StatementListener> listeners) {
+    this.tx = tx;
+    this.statement = statement;
+    this.sql = sql;
+    this.parameters = parameters;
+    this.parameterCount = parameterCount;
+    this.listeners = listeners;
+    for (StatementListener listener: listeners) {
+      try {
+        listener.beforeExecute(this);
+      } catch (Exception e) {
+        Db.DB_LOGGER.warn("Statement listener "+listener+" failed before execute: "+e.getMessage(), e);
+      }
+    }
+    this.startNanos = System.nanoTime();
+  }
+
+  /** marks the end of the JDBC execute call.  For updates this is also the end. */
+  void executed() {
+    executeNanos = System.nanoTime() - startNanos;
+  }
+
+  void finished(int rowCount) {
+    this.rowCount = rowCount;
+    end();
+  }
+
+  void failed(Exception exception) {
+    this.exception = exception;
+    end();
+  }
+
+  protected void end() {
+    endNanos = System.nanoTime();
+    if (executeNanos==-1) {
+      executeNanos = endNanos - startNanos;
+    }
+    for (StatementListener listener: listeners) {
+      try {
+        listener.afterExecute(this);
+      } catch (Exception e) {
+        Db.DB_LOGGER.warn("Statement listener "+listener+" failed after execute: "+e.getMessage(), e);
+      }
+    }
+  }
+
+  public Tx getTx() {
+    return tx;
+  }
+
+  public Statement getStatement() {
+    return statement;
+  }
+
+  public boolean isQuery() {
+    return statement instanceof Select;
+  }
+
+  /** The JDBC sql with ? for the parameters.  As parameter values are not
+   * included, this identifies the shape of the statement. */
+  public String getSql() {
+    return sql;
+  }
+
+  /** the parameters or null for batch executions that bind multiple rows */
+  public Parameters getParameters() {
+    return parameters;
+  }
+
+  public int getParameterCount() {
+    return parameterCount;
+  }
+
+  /** time spent in the JDBC execute call */
+  public long getExecuteNanos() {
+    return executeNanos;
+  }
+
+  /** For updates, the same as {@link #getExecuteNanos()}.  For queries,
+   * this also includes iterating the results until they were closed. */
+  public long getDurationNanos() {
+    return endNanos!=-1 ? endNanos - startNanos : -1;
+  }
+
+  /** rows affected for updates and rows read for queries.  -1 if the execution failed. */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** the exception if the execution failed, null otherwise */
+  public Exception getException() {
+    return exception;
+  }
+
+  public boolean isFailed() {
+    return exception!=null;
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+/** Receives callbacks around the JDBC executions of statements.
+ * Register with {@link Db#addStatementListener(StatementListener)}.
+ *
+ * Listeners are invoked synchronously in the thread that executes the
+ * statement so they should be fast.  Exceptions thrown by listeners are
+ * logged and ignored.
+ *
+ * For selects, {@link #afterExecute(StatementExecution)} is invoked when the
+ * {@link SelectResults} are closed so that the number of rows read is known. */
+public interface StatementListener {
+
+  default void beforeExecute(StatementExecution execution) {
+  }
+
+  void afterExecute(StatementExecution execution);
+}
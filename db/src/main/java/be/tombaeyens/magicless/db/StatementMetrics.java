@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** {@link StatementListener} that keeps counts and a latency histogram per sql.
+ *
+ * Latencies are {@link StatementExecution#getExecuteNanos()}, the time in the
+ * JDBC execute call.  For queries, the time the application spends
+ * iterating the results is not included.
+ *
+ * Usage:
+ * <pre>
+ * StatementMetrics statementMetrics = new StatementMetrics();
+ * db.addStatementListener(statementMetrics);
+ * ...
+ * statementMetrics.getStats().forEach((sql, stats)->log(stats+" "+sql));
+ * </pre>
+ *
+ * The sql contains ? for the parameters so all executions of the same
+ * statement shape are aggregated.  Executions beyond {@link #maxShapes}
+ * distinct sqls are aggregated under {@link #OTHER}. */
+public class StatementMetrics implements StatementListener {
+
+  public static final String OTHER = "(other)";
+  public static final int DEFAULT_MAX_SHAPES = 1000;
+
+  protected int maxShapes;
+  protected Map<String,StatementStats> stats = new ConcurrentHashMap<>();
+
+  public StatementMetrics() {
+    this(DEFAULT_MAX_SHAPES);
+  }
+
+  public StatementMetrics(int maxShapes) {
+    this.maxShapes = maxShapes;
+  }
+
+  @Override
+  public void afterExecute(StatementExecution execution) {
+    getStatementStats(execution.getSql()).record(execution);
+  }
+
+  protected StatementStats getStatementStats(String sql) {
+    StatementStats statementStats = stats.get(sql);
+    if (statementStats==null) {
+      String key = stats.size()<maxShapes ? sql : OTHER;
+      statementStats = stats.computeIfAbsent(key, k->new StatementStats());
+    }
+    return statementStats;
+  }
+
+  /** stats per sql */
+  public Map<String,StatementStats> getStats() {
+    return stats;
+  }
+
+  /** the stats of the sql or null if it wasn't executed */
+  public StatementStats getStats(String sql) {
+    return stats.get(sql);
+  }
+
+  public void reset() {
+    stats.clear();
+  }
+
+  /** Counts and latency histogram of the executions of a single sql.
+   * The histogram has exponential buckets: bucket i counts the executions
+   * that took less than 2^i microseconds. */
+  public static class StatementStats {
+
+    static final int BUCKETS = 40;
+
+    LongAdder count = new LongAdder();
+    LongAdder errors = new LongAdder();
+    LongAdder rows = new LongAdder();
+    LongAdder totalNanos = new LongAdder();
+    LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    protected void record(StatementExecution execution) {
+      long nanos = execution.getExecuteNanos();
+      count.increment();
+      if (execution.isFailed()) {
+        errors.increment();
+      } else {
+        rows.add(execution.getRowCount());
+      }
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+      histogram.incrementAndGet(getBucket(nanos));
+    }
+
+    static int getBucket(long nanos) {
+      long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+      int bucket = 64 - Long.numberOfLeadingZeros(micros);
+      return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getErrorCount() {
+      return errors.sum();
+    }
+
+    /** total rows affected or read */
+    public long getRowCount() {
+      return rows.sum();
+    }
+
+    public double getAverageMillis() {
+      long count = getCount();
+      return count!=0 ? (double) totalNanos.sum() / count / 1000000d : 0d;
+    }
+
+    public double getMaxMillis() {
+      return (double) maxNanos.get() / 1000000d;
+    }
+
+    /** upper bound of the histogram bucket that contains the percentile.
+     * @param percentile between 0 and 1, eg 0.99 */
+    public double getPercentileMillis(double percentile) {
+      long count = getCount();
+      if (count==0) {
+        return 0d;
+      }
+      long threshold = (long) Math.ceil(percentile * count);
+      long cumulative = 0;
+      for (int i=0; i<BUCKETS; i++) {
+        cumulative += histogram.get(i);
+        if (cumulative>=threshold) {
+          return Math.min((double) (1L << i) / 1000d, getMaxMillis());
+        }
+      }
+      return getMaxMillis();
+    }
+
+    /** counts per bucket, see {@link StatementStats} */
+    public long[] getHistogram() {
+      long[] counts = new long[BUCKETS];
+      for (int i=0; i<BUCKETS; i++) {
+        counts[i] = histogram.get(i);
+      }
+      return counts;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d, errors=%d, rows=%d, avg=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms",
+        getCount(), getErrorCount(), getRowCount(), getAverageMillis(),
+        getPercentileMillis(0.5), getPercentileMillis(0.99), getMaxMillis());
+    }
+  }
+}
@@ -18,13 +18,16 @@ package be.tombaeyens.magicless.db;
 import be.tombaeyens.magicless.app.util.Reflection;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Table {
 
   protected String name;
   protected Map<String,Column> columns;
+  protected List<Index> indexes = new ArrayList<>();
 
   public String getName() {
     return this.name;
@@ -60,6 +63,22 @@ public class Table {
     return this;
   }
 
+  /** declares an index that is created together with the table, see {@link Index} */
+  public Table index(Index index) {
+    index.table = this;
+    indexes.add(index);
+    return this;
+  }
+
+  /** declares a non unique index on the given columns */
+  public Table index(Column... columns) {
+    return index(new Index().columns(columns));
+  }
+
+  public List<Index> getIndexes() {
+    return indexes;
+  }
+
   public Column getPrimaryKeyColumn() {
     for (Column column: columns.values()) {
       if (column.isPrimaryKey()) {
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Logs the selected rows as a text table on the {@link Db#DB_LOGGER}.
+ * Only the first maxRows rows are buffered and logged.  The other rows
+ * are only counted so that logging large results can't cause memory problems. */
+public class TableSelectLogger implements SelectLogger {
+
+  static int MAX_COLUMN_LENGTH = 20;
+
+  public static final int DEFAULT_MAX_ROWS = 20;
+
+  int maxRows;
+  long rowCount = 0;
+  Tx tx;
+  SelectResults selectResults;
+  Select select;
+  List<SelectField> fields;
+  List<String> fieldNames = new ArrayList<>();
+  List<Integer> maxColumnLengths = new ArrayList<>();
+  List<List<String>> rowValues = new ArrayList<>();
+  String[] nextRow = null;
+
+  public TableSelectLogger(SelectResults selectResults) {
+    this(selectResults, DEFAULT_MAX_ROWS);
+  }
+
+  public TableSelectLogger(SelectResults selectResults, int maxRows) {
+    this.maxRows = maxRows;
+    this.selectResults = selectResults;
+    this.select = selectResults.select;
+    this.tx = select.getTx();
+    this.fields = select.getFields();
+    for (int i = 0; i<fields.size(); i++) {
+      SelectField field = fields.get(i);
+      String fieldName = field.getName();
+      maxColumnLengths.add(Math.min(fieldName.length(), MAX_COLUMN_LENGTH));
+      fieldNames.add(fieldName);
+    }
+  }
+
+  @Override
+  public void nextRow(boolean hasNext) {
+    if (hasNext) {
+      flushNextRow();
+      rowCount++;
+      nextRow = rowCount<=maxRows ? new String[fieldNames.size()] : null;
+    } else {
+      logSelectResults();
+    }
+  }
+
+  private void flushNextRow() {
+    if (nextRow!=null) {
+      // the next loop ensures proper max length calculation
+      // in case the results for a results are not fetched
+      // and a null value has to be displayed
+      for (int i=0; i<nextRow.length; i++) {
+        if (nextRow[i]==null) {
+          setValueText(i, "?");
+        }
+      }
+      rowValues.add(Arrays.asList(nextRow));
+      nextRow = null;
+    }
+  }
+
+  void logSelectResults() {
+    flushNextRow();
+
+    // initialize the format and separatorLine
+    int rowLength = 1; // the starting |
+    StringBuilder formatBuilder = new StringBuilder();
+    formatBuilder.append("|");
+    for (int i=0; i<maxColumnLengths.size(); i++) {
+      Integer columnLength = maxColumnLengths.get(i);
+      rowLength += columnLength+1; // +1 for the | separator
+      formatBuilder.append("%");
+      if (!fields.get(i).getType().isRightAligned()) {
+        formatBuilder.append("-");
+      }
+      formatBuilder.append(columnLength);
+      formatBuilder.append("s|");
+    }
+    String format = formatBuilder.toString();
+
+    // Build the sql as plain text with newlines
+    StringBuilder tableText = new StringBuilder();
+    String headersFormat = format.replace('|', '+');
+    String header = createRowLine(headersFormat, fieldNames).replace(' ','-');
+    tableText.append(header);
+    for (List<String> rowValues: rowValues) {
+      tableText.append("\n");
+      tableText.append(createRowLine(format, rowValues));
+    }
+    if (rowCount>rowValues.size()) {
+      tableText.append("\n... ");
+      tableText.append(rowCount-rowValues.size());
+      tableText.append(" more rows not logged");
+    }
+    tableText.append("\n");
+    tableText.append(rowCount);
+    tableText.append(rowCount==1 ? " row" : " rows");
+    // log the SQL results table with the tx prefix
+    tx.logSQL(tableText.toString());
+  }
+
+  private String createRowLine(String format, List<String> rowValues) {
+    Object[] truncatedValues = new String[rowValues.size()];
+    for (int i=0; i<rowValues.size(); i++) {
+      String rowValue = rowValues.get(i);
+      if (rowValue!=null && rowValue.length()>MAX_COLUMN_LENGTH) {
+        rowValue = rowValue.substring(0, MAX_COLUMN_LENGTH-3)+"...";
+      }
+      truncatedValues[i] = rowValue;
+    }
+    return String.format(format, truncatedValues);
+  }
+
+  @Override
+  public void setValue(int arrayIndex, DataType type, Object value) {
+    if (nextRow!=null) {
+      setValueText(arrayIndex, type.toLogText(value));
+    }
+  }
+
+  /** number of rows read, including the rows that are not logged */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /** number of rows buffered for logging, at most maxRows */
+  public int getLoggedRowCount() {
+    return rowValues.size() + (nextRow!=null ? 1 : 0);
+  }
+
+  void setValueText(int arrayIndex, String valueText) {
+    nextRow[arrayIndex] = valueText;
+    Integer length = maxColumnLengths.get(arrayIndex);
+    if (length < valueText.length()) {
+      maxColumnLengths.set(arrayIndex, Math.min(valueText.length(), MAX_COLUMN_LENGTH));
+    }
+  }
+}
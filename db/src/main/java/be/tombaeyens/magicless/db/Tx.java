@@ -16,13 +16,25 @@
 package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.app.util.Io;
+import be.tombaeyens.magicless.db.conditions.EqualCondition;
+import be.tombaeyens.magicless.db.impl.EntityCache;
+import be.tombaeyens.magicless.db.impl.StatementCache;
 
+import java.sql.Clob;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
 import static be.tombaeyens.magicless.app.util.Log.logLines;
@@ -30,19 +42,39 @@ import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
 
 public class Tx {
 
-  private static long nextTxId = 1;
+  private static final AtomicLong nextTxId = new AtomicLong(1);
   private static ThreadLocal<Tx> currentTx = new ThreadLocal<>();
 
-  protected long id = nextTxId++;
+  protected long id = nextTxId.getAndIncrement();
   protected Db db;
+  protected boolean readOnly;
+  protected boolean replica;
+  /** the isolation level of the connection before {@link #isolation(int)}, -1 if not changed */
+  protected int originalIsolation = -1;
+  protected SQLException commitException;
   protected Connection connection;
   protected boolean isRollbackOnly = false;
   protected Object result;
   protected Throwable rollbackReason;
+  protected StatementCache statementCache;
+  protected Set<SelectResults> openResults = new LinkedHashSet<>();
+  protected Set<Table> writtenTables = new HashSet<>();
+  /** primary keys of the rows updated or deleted per table with an entity cache.
+   * A null set means that unknown rows were updated or deleted. */
+  protected Map<Table,Set<Object>> entityWrites;
+  /** clobs created for parameters, freed after the statement executed */
+  protected List<Clob> temporaryClobs;
 
   public Tx(Db db, Connection connection) {
+    this(db, connection, false, false);
+  }
+
+  public Tx(Db db, Connection connection, boolean readOnly, boolean replica) {
     this.db = db;
     this.connection = connection;
+    this.readOnly = readOnly;
+    this.replica = replica;
+    this.statementCache = new StatementCache(connection, db.getMaxStatementsPerConnection(), db.getStatementCacheStats());
     DB_LOGGER.debug(this+" starting");
     currentTx.set(this);
   }
@@ -55,6 +87,20 @@ public class Tx {
     return "Tx"+id;
   }
 
+  public long getId() {
+    return id;
+  }
+
+  /** true for transactions started with {@link Db#readTx(TxLogic)} */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /** true if this transaction runs on a read replica */
+  public boolean isReplica() {
+    return replica;
+  }
+
   public Db getDb() {
     return this.db;
   }
@@ -63,6 +109,11 @@ public class Tx {
     return this.connection;
   }
 
+  /** prepared statements that are reused for the duration of this transaction */
+  public StatementCache getStatementCache() {
+    return this.statementCache;
+  }
+
   public Object getResult() {
     return this.result;
   }
@@ -88,8 +139,19 @@ public class Tx {
   }
 
   protected void end() {
-    currentTx.set(null);
-    if (isRollbackOnly) {
+    // remove instead of set(null) so pooled and virtual threads don't keep the entry
+    currentTx.remove();
+    closeOpenResults();
+    freeTemporaryClobs();
+    statementCache.close();
+    if (readOnly && !isRollbackOnly) {
+      try {
+        // there is nothing to commit
+        connection.rollback();
+      } catch (SQLException e) {
+        DB_LOGGER.error(this+" read only rollback failed: " + e.getMessage(), e);
+      }
+    } else if (isRollbackOnly) {
       try {
         DB_LOGGER.warn(this+" rolling back" + (rollbackReason!=null ? " because: " + rollbackReason : ""));
         connection.rollback();
@@ -102,6 +164,234 @@ public class Tx {
         connection.commit();
       } catch (SQLException e) {
         DB_LOGGER.error(this+" commit failed: " + e.getMessage(), e);
+        commitException = e;
+      } finally {
+        db.getQueryCache().invalidate(writtenTables);
+        invalidateEntityCaches();
+      }
+    }
+    restoreIsolation();
+  }
+
+  /** Executes the txLogic as a nested unit of work backed by a JDBC savepoint.
+   * If the txLogic throws an exception or calls {@link #setRollbackOnly()},
+   * only the work of the txLogic is rolled back and this transaction
+   * can continue and commit.  Exceptions are rethrown so catch them to
+   * continue.
+   *
+   * Usage:
+   * <pre>
+   * for (Item item: items) {
+   *   try {
+   *     tx.nested(nestedTx-&gt;process(nestedTx, item));
+   *   } catch (RuntimeException e) {
+   *     log(item, e);
+   *   }
+   * }
+   * </pre>
+   * Returns the result set by the txLogic. The result of this transaction is not affected. */
+  @SuppressWarnings("unchecked")
+  public <T> T nested(TxLogic txLogic) {
+    Savepoint savepoint;
+    try {
+      savepoint = connection.setSavepoint();
+    } catch (SQLException e) {
+      throw exceptionWithCause("create savepoint", e);
+    }
+    Object outerResult = result;
+    boolean outerRollbackOnly = isRollbackOnly;
+    Throwable outerRollbackReason = rollbackReason;
+    result = null;
+    isRollbackOnly = false;
+    Exception exception = null;
+    try {
+      txLogic.execute(this);
+    } catch (Exception e) {
+      exception = e;
+    }
+    Object nestedResult = result;
+    result = outerResult;
+
+    SQLException rollbackException = null;
+    if (exception!=null || isRollbackOnly) {
+      rollbackException = rollbackToSavepoint(savepoint, exception!=null ? exception : rollbackReason);
+    } else {
+      releaseSavepoint(savepoint);
+    }
+
+    if (rollbackException!=null) {
+      // the state of the connection is unknown so the outer transaction must not commit
+      setRollbackOnly(rollbackException);
+      RuntimeException rollbackFailure = exceptionWithCause("rollback to savepoint", rollbackException);
+      if (exception!=null) {
+        rollbackFailure.addSuppressed(exception);
+      }
+      throw rollbackFailure;
+    }
+    isRollbackOnly = outerRollbackOnly;
+    rollbackReason = outerRollbackReason;
+    if (exception instanceof RuntimeException) {
+      throw (RuntimeException) exception;
+    } else if (exception!=null) {
+      throw new RuntimeException("Nested transaction failed: "+exception.getMessage(), exception);
+    }
+    return (T) nestedResult;
+  }
+
+  /** @return the exception if the rollback failed, null otherwise */
+  protected SQLException rollbackToSavepoint(Savepoint savepoint, Throwable reason) {
+    DB_LOGGER.debug(this+" rolling back nested" + (reason!=null ? " because: " + reason : ""));
+    try {
+      connection.rollback(savepoint);
+      return null;
+    } catch (SQLException e) {
+      DB_LOGGER.error(this+" rollback to savepoint failed: " + e.getMessage(), e);
+      return e;
+    }
+  }
+
+  protected void releaseSavepoint(Savepoint savepoint) {
+    try {
+      connection.releaseSavepoint(savepoint);
+    } catch (SQLException e) {
+      // not all drivers support releasing savepoints.  they are released on commit anyway.
+      DB_LOGGER.debug(this+" release savepoint: " + e.getMessage());
+    }
+  }
+
+  /** Sets the isolation level like {@link Connection#TRANSACTION_READ_COMMITTED}
+   * for this transaction.  Call before executing any statements.
+   * The isolation level of the connection is restored when the transaction ends. */
+  public Tx isolation(int isolationLevel) {
+    try {
+      if (originalIsolation==-1) {
+        originalIsolation = connection.getTransactionIsolation();
+      }
+      connection.setTransactionIsolation(isolationLevel);
+    } catch (SQLException e) {
+      throw exceptionWithCause("set isolation level "+isolationLevel, e);
+    }
+    return this;
+  }
+
+  public int getIsolation() {
+    try {
+      return connection.getTransactionIsolation();
+    } catch (SQLException e) {
+      throw exceptionWithCause("get isolation level", e);
+    }
+  }
+
+  protected void restoreIsolation() {
+    if (originalIsolation!=-1) {
+      try {
+        connection.setTransactionIsolation(originalIsolation);
+      } catch (SQLException e) {
+        DB_LOGGER.error(this+" restore isolation level failed: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /** the exception if the commit failed, null otherwise */
+  public SQLException getCommitException() {
+    return commitException;
+  }
+
+  /** registers that this transaction inserted, updated or deleted rows in the table */
+  protected void tableWritten(Table table) {
+    if (readOnly) {
+      throw new RuntimeException(this+" is read only and can't write to "+table);
+    }
+    writtenTables.add(table);
+  }
+
+  /** registers that the rows matching the whereCondition are updated or deleted
+   * so that they are invalidated in the entity cache after commit */
+  protected void entitiesWritten(Table table, Condition whereCondition) {
+    if (db.getEntityCache(table)!=null) {
+      if (entityWrites==null) {
+        entityWrites = new HashMap<>();
+      }
+      Object primaryKey = whereCondition!=null ? EqualCondition.findPrimaryKeyValue(whereCondition) : null;
+      if (primaryKey!=null) {
+        if (!entityWrites.containsKey(table)) {
+          entityWrites.put(table, new HashSet<>());
+        }
+        Set<Object> primaryKeys = entityWrites.get(table);
+        if (primaryKeys!=null) {
+          primaryKeys.add(primaryKey);
+        }
+      } else {
+        entityWrites.put(table, null);
+      }
+    }
+  }
+
+  protected void invalidateEntityCaches() {
+    if (entityWrites!=null) {
+      entityWrites.forEach((table, primaryKeys)->{
+        EntityCache entityCache = db.getEntityCache(table);
+        if (primaryKeys!=null) {
+          entityCache.invalidate(primaryKeys);
+        } else {
+          entityCache.invalidateAll();
+        }
+      });
+    }
+  }
+
+  public boolean hasWrittenTo(Collection<Table> tables) {
+    for (Table table: tables) {
+      if (writtenTables.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void resultsOpened(SelectResults selectResults) {
+    openResults.add(selectResults);
+  }
+
+  void resultsClosed(SelectResults selectResults) {
+    openResults.remove(selectResults);
+  }
+
+  /** registers a clob created with {@link Connection#createClob()} for a
+   * parameter so that it's freed by {@link #freeTemporaryClobs()} */
+  public void temporaryClob(Clob clob) {
+    if (temporaryClobs==null) {
+      temporaryClobs = new ArrayList<>();
+    }
+    temporaryClobs.add(clob);
+  }
+
+  /** called after each statement execution.  Without free, drivers keep the
+   * temporary lobs until the physical connection is closed. */
+  public void freeTemporaryClobs() {
+    if (temporaryClobs!=null && !temporaryClobs.isEmpty()) {
+      for (Clob clob: temporaryClobs) {
+        try {
+          clob.free();
+        } catch (SQLException e) {
+          DB_LOGGER.debug(this+" free clob: " + e.getMessage());
+        }
+      }
+      temporaryClobs.clear();
+    }
+  }
+
+  /** Results that were partially read, eg to get the first row, are closed
+   * silently.  Only results that were never read indicate a likely bug. */
+  protected void closeOpenResults() {
+    if (!openResults.isEmpty()) {
+      for (SelectResults selectResults: new ArrayList<>(openResults)) {
+        if (selectResults.rowCount==0) {
+          DB_LOGGER.warn(this+" closing results that were never read: "+selectResults.getSql());
+        } else if (DB_LOGGER.isDebugEnabled()) {
+          DB_LOGGER.debug(this+" closing partially read results: "+selectResults.getSql());
+        }
+        selectResults.close();
       }
     }
   }
@@ -125,6 +415,26 @@ public class Tx {
     }
   }
 
+  /** checks the database metadata for the table, ignoring the case of the name */
+  public boolean tableExists(String tableName) {
+    try {
+      DatabaseMetaData metaData = connection.getMetaData();
+      // databases store unquoted identifiers in upper or lower case
+      for (String namePattern: new String[]{tableName, tableName.toUpperCase(), tableName.toLowerCase()}) {
+        try (ResultSet tables = metaData.getTables(null, null, namePattern, new String[]{"TABLE"})) {
+          while (tables.next()) {
+            if (tableName.equalsIgnoreCase(tables.getString(3))) {
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    } catch (SQLException e) {
+      throw exceptionWithCause("check if table "+tableName+" exists", e);
+    }
+  }
+
   public List<String> getTableNames() {
     List<String> tableNames = new ArrayList<>();
     try {
@@ -144,6 +454,14 @@ public class Tx {
     return new CreateTable(this, table);
   }
 
+  public CreateIndex newCreateIndex(Index index) {
+    return new CreateIndex(this, index);
+  }
+
+  public DropIndex newDropIndex(Index index) {
+    return new DropIndex(this, index);
+  }
+
   public Select newSelect() {
     return new Select(this);
   }
@@ -170,6 +488,11 @@ public class Tx {
     return new Insert(this, table);
   }
 
+  /** Inserts many rows in JDBC batches, see {@link BatchInsert} */
+  public BatchInsert newBatchInsert(Table table) {
+    return new BatchInsert(this, table);
+  }
+
   public Delete newDelete(Table table) {
     return newDelete(table, null);
   }
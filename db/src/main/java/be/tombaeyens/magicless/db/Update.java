@@ -17,6 +17,7 @@
 package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,7 +37,9 @@ public class Update extends Statement {
   }
 
   public int execute() {
-    String sql = getDialect().buildUpdateSql(this);
+    tx.tableWritten(table);
+    tx.entitiesWritten(table, whereCondition);
+    String sql = getDialect().getUpdateSql(this);
 
     return executeUpdate(sql);
   }
@@ -47,6 +50,15 @@ public class Update extends Statement {
     super.collectParameters(parameters);
   }
 
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    super.collectSqlShape(sqlShape);
+    sqlShape.add(table);
+    if (sets!=null) {
+      sets.forEach(set->set.collectSqlShape(sqlShape));
+    }
+  }
+
   public Update set(Column column, Object value) {
     if (sets==null) {
       sets = new ArrayList<>();
@@ -16,6 +16,7 @@
 package be.tombaeyens.magicless.db;
 
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 public class UpdateSet {
 
@@ -35,4 +36,8 @@ public class UpdateSet {
     parameters.addParameter(value, column.getType());
   }
 
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(column);
+  }
+
 }
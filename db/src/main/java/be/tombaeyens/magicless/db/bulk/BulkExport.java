@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.bulk;
+
+import be.tombaeyens.magicless.db.Select;
+import be.tombaeyens.magicless.db.SelectField;
+import be.tombaeyens.magicless.db.SelectResults;
+import be.tombaeyens.magicless.db.types.JsonType;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Streams the results of a select as CSV or NDJSON.  The rows are read
+ * with a forward only cursor and a {@link #fetchSize(int)} so memory
+ * stays constant for any number of rows.
+ *
+ * Usage:
+ * <pre>
+ * BulkReport report = tx.newSelect(Users.TABLE)
+ *   .export(BulkFormat.NDJSON, outputStream);
+ * </pre> */
+public class BulkExport {
+
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  protected Select select;
+  protected BulkFormat format = BulkFormat.CSV;
+  protected int fetchSize = DEFAULT_FETCH_SIZE;
+
+  public BulkExport(Select select) {
+    this.select = select;
+  }
+
+  public BulkExport format(BulkFormat format) {
+    this.format = format;
+    return this;
+  }
+
+  public BulkExport fetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+    return this;
+  }
+
+  /** writes UTF-8.  The output stream is flushed, but not closed. */
+  public BulkReport execute(OutputStream outputStream) {
+    return execute(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+  }
+
+  public BulkReport execute(Writer writer) {
+    long startNanos = System.nanoTime();
+    Writer bufferedWriter = new BufferedWriter(writer);
+    List<SelectField> fields = select.getFields();
+    long rowCount = 0;
+    try (Stream<SelectResults> rows = select.fetchSize(fetchSize).stream()) {
+      if (format==BulkFormat.CSV) {
+        List<String> header = new ArrayList<>();
+        fields.forEach(field->header.add(field.getName()));
+        Csv.writeRecord(bufferedWriter, header);
+      }
+      Gson gson = new Gson();
+      JsonParser jsonParser = new JsonParser();
+      List<String> values = new ArrayList<>(fields.size());
+      Iterator<SelectResults> iterator = rows.iterator();
+      while (iterator.hasNext()) {
+        SelectResults selectResults = iterator.next();
+        if (format==BulkFormat.CSV) {
+          values.clear();
+          for (SelectField field: fields) {
+            Object value = selectResults.get(field);
+            if (field.getType() instanceof JsonType) {
+              values.add(((JsonType) field.getType()).toJsonText(value));
+            } else {
+              values.add(value!=null ? value.toString() : null);
+            }
+          }
+          Csv.writeRecord(bufferedWriter, values);
+        } else {
+          writeJsonRow(bufferedWriter, gson, jsonParser, fields, selectResults);
+        }
+        rowCount++;
+      }
+      bufferedWriter.flush();
+    } catch (IOException e) {
+      throw exceptionWithCause("write bulk export", e);
+    }
+    BulkReport report = new BulkReport(rowCount, System.nanoTime() - startNanos);
+    DB_LOGGER.info("Exported " + report);
+    return report;
+  }
+
+  protected void writeJsonRow(Writer writer, Gson gson, JsonParser jsonParser, List<SelectField> fields, SelectResults selectResults) throws IOException {
+    // the JsonWriter writes straight through to the writer and is not closed
+    // as that would close the writer
+    JsonWriter jsonWriter = new JsonWriter(writer);
+    jsonWriter.beginObject();
+    for (SelectField field: fields) {
+      Object value = selectResults.get(field);
+      jsonWriter.name(field.getName());
+      if (value==null) {
+        jsonWriter.nullValue();
+      } else if (field.getType() instanceof JsonType) {
+        gson.toJson(((JsonType) field.getType()).toJsonTree(value, jsonParser), jsonWriter);
+      } else if (value instanceof Number) {
+        jsonWriter.value((Number) value);
+      } else if (value instanceof Boolean) {
+        jsonWriter.value((Boolean) value);
+      } else {
+        jsonWriter.value(value.toString());
+      }
+    }
+    jsonWriter.endObject();
+    jsonWriter.flush();
+    writer.write('\n');
+  }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.bulk;
+
+/** Text formats for {@link BulkImport} and {@link BulkExport} */
+public enum BulkFormat {
+
+  /** Comma separated values (RFC 4180) with a header line of column names.
+   * Nulls are empty fields, empty strings are quoted: <code>""</code> */
+  CSV,
+
+  /** Newline delimited JSON: one JSON object per line with the column names as keys */
+  NDJSON
+}
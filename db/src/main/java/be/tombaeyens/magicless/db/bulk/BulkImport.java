@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.bulk;
+
+import be.tombaeyens.magicless.db.BatchInsert;
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.types.JsonType;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Loads CSV or NDJSON into a table.
+ *
+ * The input is split into chunks of records in the calling thread.  The
+ * chunks are parsed and converted to column values with
+ * {@link be.tombaeyens.magicless.db.DataType#parseText(String)} on a pool
+ * of {@link #parallelism(int)} threads.  The rows are inserted in input order
+ * with {@link BatchInsert}s in transactions of exactly {@link #commitEvery(int)}
+ * rows, except for the last one.
+ * At most a few chunks are in flight so memory stays bounded for any input size.
+ *
+ * Usage:
+ * <pre>
+ * BulkReport report = db.newBulkImport(Users.TABLE)
+ *   .format(BulkFormat.CSV)
+ *   .execute(inputStream);
+ * </pre>
+ *
+ * For CSV, the first record must contain the column names.  For NDJSON, keys
+ * that are not column names are ignored and missing columns are inserted as null.
+ * CSV headers and NDJSON keys are matched with the column names ignoring case. */
+public class BulkImport {
+
+  public static final int DEFAULT_COMMIT_EVERY = 10000;
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  protected Db db;
+  protected Table table;
+  protected BulkFormat format = BulkFormat.CSV;
+  protected int commitEvery = DEFAULT_COMMIT_EVERY;
+  protected int chunkSize = DEFAULT_CHUNK_SIZE;
+  protected int parallelism = Runtime.getRuntime().availableProcessors();
+  /** lowercase column name to column */
+  protected Map<String,Column> columnsByName = new HashMap<>();
+
+  public BulkImport(Db db, Table table) {
+    this.db = db;
+    this.table = table;
+    table.getColumns().values().forEach(column->columnsByName.put(column.getName().toLowerCase(), column));
+  }
+
+  public BulkImport format(BulkFormat format) {
+    this.format = format;
+    return this;
+  }
+
+  /** number of rows per transaction.  Only the last transaction can have fewer rows. */
+  public BulkImport commitEvery(int commitEvery) {
+    this.commitEvery = commitEvery;
+    return this;
+  }
+
+  /** number of records that are parsed together by one thread */
+  public BulkImport chunkSize(int chunkSize) {
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  /** number of threads that parse the input.  1 parses in the calling thread. */
+  public BulkImport parallelism(int parallelism) {
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /** reads the input as UTF-8.  The input stream is not closed. */
+  public BulkReport execute(InputStream inputStream) {
+    return execute(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+  }
+
+  public BulkReport execute(Reader reader) {
+    long startNanos = System.nanoTime();
+    BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    ExecutorService parsers = parallelism>1 ? createParsers() : null;
+    try {
+      List<Column> columns = format==BulkFormat.CSV
+        ? readCsvHeader(bufferedReader)
+        : new ArrayList<>(table.getColumns().values());
+      Deque<Future<List<Object[]>>> parsing = new ArrayDeque<>();
+      List<Object[]> rows = new ArrayList<>();
+      long rowCount = 0;
+      List<Object> chunk = readChunk(bufferedReader);
+      while (!chunk.isEmpty() || !parsing.isEmpty()) {
+        if (!chunk.isEmpty()) {
+          List<Object> records = chunk;
+          parsing.add(parsers!=null
+            ? parsers.submit(()->parse(records, columns))
+            : CompletableFuture.completedFuture(parse(records, columns)));
+          chunk = readChunk(bufferedReader);
+        }
+        // limits the parsed rows waiting in memory
+        if (parsing.size()>parallelism || (chunk.isEmpty() && !parsing.isEmpty())) {
+          rows.addAll(parsing.removeFirst().get());
+          while (rows.size()>=commitEvery) {
+            List<Object[]> committed = rows.subList(0, commitEvery);
+            rowCount += insert(columns, committed);
+            committed.clear();
+          }
+        }
+      }
+      rowCount += insert(columns, rows);
+      BulkReport report = new BulkReport(rowCount, System.nanoTime() - startNanos);
+      DB_LOGGER.info("Imported " + report + " into " + table.getName());
+      return report;
+    } catch (IOException e) {
+      throw exceptionWithCause("read bulk import of "+table.getName(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw exceptionWithCause("bulk import of "+table.getName()+" got interrupted", e);
+    } catch (ExecutionException e) {
+      throw exceptionWithCause("parse bulk import of "+table.getName(), e.getCause());
+    } finally {
+      if (parsers!=null) {
+        parsers.shutdownNow();
+      }
+    }
+  }
+
+  protected ExecutorService createParsers() {
+    AtomicInteger threadIndex = new AtomicInteger(1);
+    return Executors.newFixedThreadPool(parallelism, runnable->{
+      Thread thread = new Thread(runnable, "bulk-import-" + threadIndex.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  protected List<Column> readCsvHeader(BufferedReader reader) throws IOException {
+    String[] header = Csv.readRecord(reader);
+    if (header==null) {
+      return new ArrayList<>();
+    }
+    List<Column> columns = new ArrayList<>();
+    for (String name: header) {
+      Column column = name!=null ? columnsByName.get(name.trim().toLowerCase()) : null;
+      if (column==null) {
+        throw new RuntimeException("CSV header "+name+" is not a column of "+table.getName());
+      }
+      columns.add(column);
+    }
+    return columns;
+  }
+
+  /** the next chunkSize raw records: CSV String[] or NDJSON lines */
+  protected List<Object> readChunk(BufferedReader reader) throws IOException {
+    List<Object> records = new ArrayList<>(chunkSize);
+    while (records.size()<chunkSize) {
+      Object record;
+      if (format==BulkFormat.CSV) {
+        record = Csv.readRecord(reader);
+      } else {
+        String line = reader.readLine();
+        while (line!=null && line.trim().isEmpty()) {
+          line = reader.readLine();
+        }
+        record = line;
+      }
+      if (record==null) {
+        break;
+      }
+      records.add(record);
+    }
+    return records;
+  }
+
+  /** runs in the parser threads */
+  protected List<Object[]> parse(List<Object> records, List<Column> columns) {
+    List<Object[]> rows = new ArrayList<>(records.size());
+    JsonParser jsonParser = format==BulkFormat.NDJSON ? new JsonParser() : null;
+    for (Object record: records) {
+      Object[] row = new Object[columns.size()];
+      if (format==BulkFormat.CSV) {
+        String[] fields = (String[]) record;
+        if (fields.length!=columns.size()) {
+          throw new RuntimeException("Expected "+columns.size()+" CSV fields, but was "+fields.length+" in "+String.join(",", fields));
+        }
+        for (int i=0; i<fields.length; i++) {
+          row[i] = columns.get(i).getType().parseText(fields[i]);
+        }
+      } else {
+        JsonObject jsonObject = jsonParser.parse((String) record).getAsJsonObject();
+        for (Map.Entry<String,JsonElement> entry: jsonObject.entrySet()) {
+          // matched case insensitive, like the CSV header
+          Column column = columnsByName.get(entry.getKey().toLowerCase());
+          int i = column!=null ? columns.indexOf(column) : -1;
+          JsonElement value = entry.getValue();
+          if (i!=-1 && !value.isJsonNull()) {
+            row[i] = column.getType() instanceof JsonType || !value.isJsonPrimitive()
+              ? value.toString()
+              : column.getType().parseText(value.getAsString());
+          }
+        }
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  protected int insert(List<Column> columns, List<Object[]> rows) {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    Column[] columnsArray = columns.toArray(new Column[columns.size()]);
+    db.tx(tx->{
+      BatchInsert batchInsert = tx.newBatchInsert(table)
+        .columns(columnsArray);
+      for (Object[] row: rows) {
+        batchInsert.row();
+        for (int i=0; i<columnsArray.length; i++) {
+          batchInsert.set(columnsArray[i], row[i]);
+        }
+      }
+      batchInsert.execute();
+    });
+    DB_LOGGER.debug("Bulk import committed " + rows.size() + " rows into " + table.getName());
+    return rows.size();
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/** The number of rows and the throughput of a bulk import or export */
+public class BulkReport {
+
+  long rows;
+  long nanos;
+
+  public BulkReport(long rows, long nanos) {
+    this.rows = rows;
+    this.nanos = nanos;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  public long getMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  public double getRowsPerSecond() {
+    return nanos!=0 ? rows * 1000000000d / nanos : 0d;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d rows in %dms (%.0f rows/s)", rows, getMillis(), getRowsPerSecond());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Reads and writes CSV records (RFC 4180).  A null is written as an
+ * empty field and an empty string as a quoted empty field so that both
+ * can be read back. */
+class Csv {
+
+  static void writeRecord(Writer writer, List<String> fields) throws IOException {
+    for (int i=0; i<fields.size(); i++) {
+      if (i>0) {
+        writer.write(',');
+      }
+      writeField(writer, fields.get(i));
+    }
+    writer.write("\r\n");
+  }
+
+  static void writeField(Writer writer, String field) throws IOException {
+    if (field==null) {
+      return;
+    }
+    if (field.isEmpty() || needsQuotes(field)) {
+      writer.write('"');
+      writer.write(field.replace("\"", "\"\""));
+      writer.write('"');
+    } else {
+      writer.write(field);
+    }
+  }
+
+  static boolean needsQuotes(String field) {
+    for (int i=0; i<field.length(); i++) {
+      char c = field.charAt(i);
+      if (c==',' || c=='"' || c=='\n' || c=='\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** the fields of the next record or null at the end of the input.
+   * Quoted fields may contain newlines.  The reader should be buffered. */
+  static String[] readRecord(Reader reader) throws IOException {
+    int c = reader.read();
+    if (c==-1) {
+      return null;
+    }
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    boolean inQuotes = false;
+    while (true) {
+      if (inQuotes) {
+        if (c==-1) {
+          throw new RuntimeException("Unterminated quoted CSV field: "+field);
+        } else if (c=='"') {
+          reader.mark(1);
+          int next = reader.read();
+          if (next=='"') {
+            field.append('"');
+          } else {
+            inQuotes = false;
+            reader.reset();
+          }
+        } else {
+          field.append((char) c);
+        }
+      } else if (c==',' || c=='\n' || c=='\r' || c==-1) {
+        fields.add(quoted || field.length()>0 ? field.toString() : null);
+        field.setLength(0);
+        quoted = false;
+        if (c!=',') {
+          if (c=='\r') {
+            reader.mark(1);
+            if (reader.read()!='\n') {
+              reader.reset();
+            }
+          }
+          return fields.toArray(new String[fields.size()]);
+        }
+      } else if (c=='"' && field.length()==0) {
+        quoted = true;
+        inQuotes = true;
+      } else {
+        field.append((char) c);
+      }
+      c = reader.read();
+    }
+  }
+}
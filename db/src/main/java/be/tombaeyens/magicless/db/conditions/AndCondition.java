@@ -18,6 +18,7 @@ package be.tombaeyens.magicless.db.conditions;
 import be.tombaeyens.magicless.db.Condition;
 import be.tombaeyens.magicless.db.Statement;
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -46,7 +47,18 @@ public class AndCondition implements Condition {
     andConditions.forEach(andCondition->andCondition.collectParameters(parameters));
   }
 
+  public List<Condition> getAndConditions() {
+    return andConditions;
+  }
+
   public void add(Condition andCondition) {
     this.andConditions.add(andCondition);
   }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(AndCondition.class);
+    sqlShape.add(andConditions.size());
+    andConditions.forEach(andCondition->andCondition.collectSqlShape(sqlShape));
+  }
 }
@@ -19,6 +19,7 @@ import be.tombaeyens.magicless.db.Column;
 import be.tombaeyens.magicless.db.Condition;
 import be.tombaeyens.magicless.db.Statement;
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 
 public class EqualCondition implements Condition {
@@ -45,4 +46,48 @@ public class EqualCondition implements Condition {
       parameters.addParameter(value, column.getType());
     }
   }
+
+  public Column getColumn() {
+    return column;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+
+  /** Returns the value of the primary key if the condition guarantees that
+   * only the row with that primary key matches.  Otherwise null.
+   * Integral numbers are returned as Long so that eg an Integer and a Long
+   * for the same key are the same cache key. */
+  public static Object findPrimaryKeyValue(Condition condition) {
+    if (condition instanceof EqualCondition) {
+      EqualCondition equalCondition = (EqualCondition) condition;
+      if (equalCondition.column.isPrimaryKey() && !(equalCondition.value instanceof Column)) {
+        return normalizeKey(equalCondition.value);
+      }
+    } else if (condition instanceof AndCondition) {
+      for (Condition andCondition: ((AndCondition) condition).getAndConditions()) {
+        Object primaryKeyValue = findPrimaryKeyValue(andCondition);
+        if (primaryKeyValue!=null) {
+          return primaryKeyValue;
+        }
+      }
+    }
+    return null;
+  }
+
+  static Object normalizeKey(Object value) {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    return value;
+  }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(EqualCondition.class);
+    sqlShape.add(column);
+    // a column value is rendered in the sql, other values become a ?
+    sqlShape.add(value instanceof Column ? value : null);
+  }
 }
@@ -19,6 +19,7 @@ import be.tombaeyens.magicless.db.Column;
 import be.tombaeyens.magicless.db.Condition;
 import be.tombaeyens.magicless.db.Statement;
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 
 public class IsNullCondition implements Condition {
@@ -37,4 +38,10 @@ public class IsNullCondition implements Condition {
   @Override
   public void collectParameters(Parameters parameters) {
   }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(IsNullCondition.class);
+    sqlShape.add(column);
+  }
 }
@@ -19,6 +19,7 @@ import be.tombaeyens.magicless.db.Column;
 import be.tombaeyens.magicless.db.Condition;
 import be.tombaeyens.magicless.db.Statement;
 import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
 
 
 public class LikeCondition implements Condition {
@@ -40,4 +41,10 @@ public class LikeCondition implements Condition {
   public void collectParameters(Parameters parameters) {
     parameters.addParameter(pattern!=null ? pattern : "%", column.getType());
   }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(LikeCondition.class);
+    sqlShape.add(column);
+  }
 }
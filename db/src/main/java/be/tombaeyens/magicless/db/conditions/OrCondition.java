@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.conditions;
+
+import be.tombaeyens.magicless.db.Condition;
+import be.tombaeyens.magicless.db.Statement;
+import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+
+public class OrCondition implements Condition {
+
+  List<Condition> orConditions;
+
+  public OrCondition(Condition[] orConditions) {
+    this.orConditions = new ArrayList<>(Arrays.asList(orConditions));
+  }
+
+  @Override
+  public String buildSql(Statement statement) {
+    // parentheses because AND takes precedence over OR
+    return orConditions.stream()
+      .map(orCondition->orCondition.buildSql(statement))
+      .collect(joining(" \n   OR ", "(", ")"));
+  }
+
+  @Override
+  public void collectParameters(Parameters parameters) {
+    orConditions.forEach(orCondition->orCondition.collectParameters(parameters));
+  }
+
+  public List<Condition> getOrConditions() {
+    return orConditions;
+  }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(OrCondition.class);
+    sqlShape.add(orConditions.size());
+    orConditions.forEach(orCondition->orCondition.collectSqlShape(sqlShape));
+  }
+}
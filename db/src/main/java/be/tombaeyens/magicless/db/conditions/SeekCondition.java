@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.conditions;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Condition;
+import be.tombaeyens.magicless.db.Statement;
+import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.impl.SqlShape;
+
+import java.util.List;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.assertTrue;
+
+/** Keyset pagination condition: selects the rows that come after (or before)
+ * the given values in the ordering of the given columns.
+ * Eg <code>(a, b) &gt; (?, ?)</code>.  The sql is generated by the
+ * {@link be.tombaeyens.magicless.db.Dialect#buildSeekConditionSql(SeekCondition, Statement)} */
+public class SeekCondition implements Condition {
+
+  List<Column> columns;
+  List<Object> values;
+  boolean ascending;
+
+  public SeekCondition(List<Column> columns, List<Object> values, boolean ascending) {
+    assertTrue(columns.size()==values.size(), "Expected %d seek values for columns %s, but was %d", columns.size(), columns, values.size());
+    this.columns = columns;
+    this.values = values;
+    this.ascending = ascending;
+  }
+
+  @Override
+  public String buildSql(Statement statement) {
+    return statement.getDialect().buildSeekConditionSql(this, statement);
+  }
+
+  @Override
+  public void collectParameters(Parameters parameters) {
+    for (int i=0; i<columns.size(); i++) {
+      parameters.addParameter(values.get(i), columns.get(i).getType());
+    }
+  }
+
+  @Override
+  public void collectSqlShape(SqlShape sqlShape) {
+    sqlShape.add(SeekCondition.class);
+    sqlShape.add(ascending);
+    columns.forEach(column->sqlShape.add(column));
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  public List<Object> getValues() {
+    return values;
+  }
+
+  public boolean isAscending() {
+    return ascending;
+  }
+}
@@ -17,9 +17,24 @@ package be.tombaeyens.magicless.db.dialects;
 
 import be.tombaeyens.magicless.db.Dialect;
 
+import java.sql.SQLException;
+
 public class H2Dialect extends Dialect {
 
   public static H2Dialect INSTANCE  = new H2Dialect();
 
+  /** H2 error code for a lock timeout */
+  static final int LOCK_TIMEOUT = 50200;
+
+  @Override
+  public int getMaxParametersPerStatement() {
+    return 10000;
+  }
+
+  @Override
+  protected boolean isRetryable(SQLException exception) {
+    return exception.getErrorCode()==LOCK_TIMEOUT
+           || super.isRetryable(exception);
+  }
 
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.id;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.TxLogic;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNullParameter;
+import static be.tombaeyens.magicless.db.Condition.and;
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Hands out dense numeric ids from blocks that are reserved in the
+ * {@link Sequences} table (hi/lo style), so there are no database round
+ * trips for most ids.
+ *
+ * A block is reserved in a short separate transaction with a compare-and-set
+ * update, which makes it safe to use the same sequence from many processes.
+ * When another process reserved a block concurrently, the reservation is
+ * retried in a new transaction, so that it also sees the other update under
+ * snapshot isolation, at most {@link #MAX_ALLOCATION_ATTEMPTS} times.
+ * Ids within a block are handed out lock-free with an AtomicLong.  When half
+ * of a block is used, the next block is reserved in the background.
+ * Allocations always run in their own transaction on a dedicated allocation
+ * thread of this generator so that they never interfere with the transaction
+ * of the calling thread.  They don't use
+ * {@link Db#txAsync(be.tombaeyens.magicless.db.TxLogic)} because ids are
+ * often generated inside async transactions: waiting for an allocation that
+ * is queued behind the waiting transaction itself would deadlock when the
+ * async executor is saturated.
+ *
+ * An allocation needs a connection of its own while the calling thread
+ * typically still holds the connection of its transaction.  When all pool
+ * connections are held by transactions that wait for a block, those wait
+ * until the pool's acquire timeout and fail.  Blocks are therefore
+ * prefetched halfway, and {@link #prefetch()} can be called at startup so
+ * that the first block is reserved before the load starts.  Size the pool
+ * and the block size so that a block lasts longer than an allocation.
+ *
+ * Ids of unused blocks are lost when the process stops, so ids are unique
+ * and increasing per process but there can be gaps. */
+public class SequenceIdGenerator implements LongIdGenerator {
+
+  public static final int DEFAULT_BLOCK_SIZE = 1000;
+  public static final int MAX_ALLOCATION_ATTEMPTS = 10;
+
+  protected Db db;
+  protected String sequenceName;
+  protected int blockSize = DEFAULT_BLOCK_SIZE;
+  protected volatile Block block;
+  protected CompletableFuture<Long> prefetchedBlock;
+  protected volatile boolean sequenceCreated;
+  protected AtomicLong allocatedBlocks = new AtomicLong();
+  protected ExecutorService allocationExecutor;
+
+  protected static class Block {
+    AtomicLong next;
+    long end;
+    long prefetchAt;
+    Block(long start, int size) {
+      this.next = new AtomicLong(start);
+      this.end = start + size;
+      this.prefetchAt = start + size/2;
+    }
+  }
+
+  public SequenceIdGenerator(Db db, String sequenceName) {
+    assertNotNullParameter(db, "db");
+    assertNotNullParameter(sequenceName, "sequenceName");
+    this.db = db;
+    this.sequenceName = sequenceName;
+    this.allocationExecutor = createAllocationExecutor();
+  }
+
+  /** number of ids reserved per database round trip.
+   * Must be the same for all processes that use the sequence. */
+  public SequenceIdGenerator blockSize(int blockSize) {
+    if (blockSize<1) {
+      throw new RuntimeException("Block size must be positive: "+blockSize);
+    }
+    this.blockSize = blockSize;
+    return this;
+  }
+
+  @Override
+  public String generateId(String prefix) {
+    String id = Long.toString(generateLongId());
+    return prefix!=null ? prefix+id : id;
+  }
+
+  @Override
+  public long generateLongId() {
+    while (true) {
+      Block current = this.block;
+      if (current!=null) {
+        long id = current.next.getAndIncrement();
+        if (id<current.end) {
+          if (id==current.prefetchAt) {
+            prefetch();
+          }
+          return id;
+        }
+      }
+      nextBlock(current);
+    }
+  }
+
+  /** replaces the exhausted block unless another thread already did */
+  protected synchronized void nextBlock(Block exhausted) {
+    if (block!=exhausted) {
+      return;
+    }
+    CompletableFuture<Long> allocation = prefetchedBlock;
+    prefetchedBlock = null;
+    long start;
+    try {
+      start = join(allocation!=null ? allocation : allocateBlockAsync());
+    } catch (RuntimeException e) {
+      if (allocation==null) {
+        throw e;
+      }
+      DB_LOGGER.warn("Prefetching id block of sequence " + sequenceName + " failed, retrying: " + e.getMessage());
+      start = join(allocateBlockAsync());
+    }
+    block = new Block(start, blockSize);
+  }
+
+  /** starts reserving the next block in the background if that's not yet
+   * happening.  Call at startup so that the first block is reserved before
+   * transactions that need ids hold all connections of the pool. */
+  public synchronized void prefetch() {
+    if (prefetchedBlock==null) {
+      prefetchedBlock = allocateBlockAsync();
+    }
+  }
+
+  protected CompletableFuture<Long> allocateBlockAsync() {
+    if (!sequenceCreated) {
+      createSequence();
+    }
+    return CompletableFuture.supplyAsync(this::allocateBlock, allocationExecutor);
+  }
+
+  /** executes the txLogic in a new transaction on the allocation thread */
+  protected <T> CompletableFuture<T> allocationTx(TxLogic txLogic) {
+    return CompletableFuture.supplyAsync(()->db.tx(txLogic), allocationExecutor);
+  }
+
+  /** Single daemon thread that is only started while allocations are pending.
+   * Override to plug in another executor, but don't use the executor of
+   * {@link Db#txAsync(TxLogic)}. */
+  protected ExecutorService createAllocationExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      1, 1, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      runnable->{
+        Thread thread = new Thread(runnable, "sequence-" + sequenceName);
+        thread.setDaemon(true);
+        return thread;
+      });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static <T> T join(CompletableFuture<T> allocation) {
+    try {
+      return allocation.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException
+        ? (RuntimeException) cause
+        : new RuntimeException("Id block allocation failed: "+cause.getMessage(), cause);
+    }
+  }
+
+  /** reserves the next block in the sequences table and returns its first id.
+   * Each attempt runs in its own transaction. */
+  protected long allocateBlock() {
+    for (int attempt=1; attempt<=MAX_ALLOCATION_ATTEMPTS; attempt++) {
+      Long start = db.tx(tx->tx.setResult(tryAllocateBlock(tx)));
+      if (start!=null) {
+        allocatedBlocks.incrementAndGet();
+        DB_LOGGER.debug("Allocated ids " + start + "-" + (start+blockSize-1) + " of sequence " + sequenceName);
+        return start;
+      }
+      DB_LOGGER.debug("Id block of sequence " + sequenceName + " was allocated concurrently, attempt " + attempt);
+    }
+    throw new RuntimeException("Couldn't allocate an id block of sequence "+sequenceName
+      + " in "+MAX_ALLOCATION_ATTEMPTS+" attempts because of concurrent allocations");
+  }
+
+  /** compare-and-set of the next value.  Returns the first id of the
+   * reserved block or null if another process reserved a block concurrently. */
+  protected Long tryAllocateBlock(Tx tx) {
+    Long start = selectNextValue(tx);
+    if (start==null) {
+      throw new RuntimeException("Sequence "+sequenceName+" does not exist");
+    }
+    int updateCount = tx.newUpdate(Sequences.TABLE)
+      .set(Sequences.NEXT_VALUE, start + blockSize)
+      .where(and(
+        equal(Sequences.NAME, sequenceName),
+        equal(Sequences.NEXT_VALUE, start)))
+      .execute();
+    return updateCount==1 ? start : null;
+  }
+
+  protected Long selectNextValue(Tx tx) {
+    return tx.newSelect(Sequences.NEXT_VALUE)
+      .where(equal(Sequences.NAME, sequenceName))
+      .execute()
+      .stream()
+      .map(selectResults->(Long)selectResults.get(Sequences.NEXT_VALUE))
+      .findFirst()
+      .orElse(null);
+  }
+
+  /** Creates the sequences table and the sequence row if they don't exist.
+   * When another process creates them concurrently, the failed transaction
+   * is retried once so that it sees the other process' table and row. */
+  protected void createSequence() {
+    try {
+      allocationTx(this::createSequence).join();
+    } catch (CompletionException e) {
+      DB_LOGGER.debug("Creating sequence " + sequenceName + " failed, checking again: " + e.getMessage());
+      join(allocationTx(this::createSequence));
+    }
+    sequenceCreated = true;
+  }
+
+  protected void createSequence(Tx tx) {
+    boolean tableExists = tx.getTableNames().stream()
+      .map(tableName->tableName.toLowerCase())
+      .anyMatch(tableName->tableName.equals(Sequences.TABLE.getName().toLowerCase()));
+    if (!tableExists) {
+      tx.newCreateTable(Sequences.TABLE).execute();
+    }
+    if (!tableExists || selectNextValue(tx)==null) {
+      tx.newInsert(Sequences.TABLE)
+        .set(Sequences.NAME, sequenceName)
+        .set(Sequences.NEXT_VALUE, 1L)
+        .execute();
+    }
+  }
+
+  public String getSequenceName() {
+    return sequenceName;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** number of blocks reserved in the database by this generator */
+  public long getAllocatedBlocks() {
+    return allocatedBlocks.get();
+  }
+}
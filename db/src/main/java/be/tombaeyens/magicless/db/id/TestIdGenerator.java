@@ -1,15 +1,22 @@
 package be.tombaeyens.magicless.db.id;
 
-public class TestIdGenerator implements IdGenerator {
+import java.util.concurrent.atomic.AtomicLong;
 
-  long nextId = 1;
+public class TestIdGenerator implements LongIdGenerator {
+
+  AtomicLong nextId = new AtomicLong(1);
 
   @Override
   public String generateId(String prefix) {
     return prefix!=null ? prefix+nextId() : nextId();
   }
 
+  @Override
+  public long generateLongId() {
+    return nextId.getAndIncrement();
+  }
+
   private String nextId() {
-    return Long.toString(nextId++);
+    return Long.toString(generateLongId());
   }
 }
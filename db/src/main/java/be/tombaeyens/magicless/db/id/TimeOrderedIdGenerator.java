@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.id;
+
+import be.tombaeyens.magicless.db.Db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Generates unique, time ordered ids so that inserts append to the end of
+ * the primary key index instead of scattering over it like random UUIDs.
+ *
+ * The 63 bit long ids consist of 41 bits of milliseconds since 2018-01-01,
+ * 10 bits node id and 12 bits sequence within the millisecond.  So at most
+ * 1024 nodes, with node ids 0 to {@link #MAX_NODE_ID}, can generate ids for
+ * the same database.  Each node must have a different node id, otherwise
+ * they can generate duplicate ids.  Node ids are therefore never derived
+ * from eg a hash of the host name: configure them explicitly with
+ * {@link be.tombaeyens.magicless.db.DbConfiguration#nodeId(int)} or pass
+ * them to the constructor.
+ *
+ * Generation is lock-free: the last timestamp and sequence are kept in a
+ * single AtomicLong that is advanced with compare-and-set.  Ids of one
+ * generator are strictly increasing.  When the 4096 ids of a millisecond
+ * are used up, or when the clock moves backwards, the generator continues
+ * from the last timestamp rather than waiting or producing duplicates.
+ *
+ * String ids are the long id in 13 characters of Crockford base 32, so
+ * they sort in the same order as the long ids. */
+public class TimeOrderedIdGenerator implements LongIdGenerator {
+
+  /** 2018-01-01T00:00:00Z */
+  public static final long EPOCH_MILLIS = 1514764800000L;
+
+  public static final int NODE_BITS = 10;
+  public static final int SEQUENCE_BITS = 12;
+  public static final int MAX_NODE_ID = (1<<NODE_BITS) - 1;
+  static final long SEQUENCE_MASK = (1L<<SEQUENCE_BITS) - 1;
+
+  static final char[] BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+  static final int STRING_LENGTH = 13;
+
+  /** clock regressions larger than this are logged */
+  static final long CLOCK_REGRESSION_LOG_MILLIS = 1000;
+
+  protected int nodeId;
+  /** (millis since epoch << SEQUENCE_BITS) | sequence of the last generated id */
+  protected AtomicLong last = new AtomicLong();
+  protected volatile boolean clockRegressionLogged;
+
+  /** uses the {@link Db#getNodeId()}, which must be configured */
+  public TimeOrderedIdGenerator(Db db) {
+    this(assertNodeIdConfigured(db));
+  }
+
+  public TimeOrderedIdGenerator(int nodeId) {
+    if (nodeId<0 || nodeId>MAX_NODE_ID) {
+      throw new RuntimeException("Node id must be between 0 and "+MAX_NODE_ID+": "+nodeId);
+    }
+    this.nodeId = nodeId;
+  }
+
+  static int assertNodeIdConfigured(Db db) {
+    Integer nodeId = db.getNodeId();
+    if (nodeId==null) {
+      throw new RuntimeException("No node id configured for process "+db.getProcess()+".  "
+        + "Each process that generates time ordered ids needs a unique node id "
+        + "between 0 and "+MAX_NODE_ID+", see DbConfiguration.nodeId(int)");
+    }
+    return nodeId;
+  }
+
+  @Override
+  public String generateId(String prefix) {
+    String id = toString(generateLongId());
+    return prefix!=null ? prefix+id : id;
+  }
+
+  @Override
+  public long generateLongId() {
+    long now = currentTimeMillis() - EPOCH_MILLIS;
+    long current;
+    long next;
+    do {
+      current = last.get();
+      next = Math.max(now<<SEQUENCE_BITS, current+1);
+    } while (!last.compareAndSet(current, next));
+
+    long lastMillis = current>>>SEQUENCE_BITS;
+    if (now + CLOCK_REGRESSION_LOG_MILLIS < lastMillis) {
+      if (!clockRegressionLogged) {
+        clockRegressionLogged = true;
+        DB_LOGGER.warn("Clock moved back " + (lastMillis-now) + " ms, continuing ids from the last timestamp");
+      }
+    } else if (clockRegressionLogged) {
+      clockRegressionLogged = false;
+    }
+
+    return ((next>>>SEQUENCE_BITS)<<(NODE_BITS+SEQUENCE_BITS))
+           | ((long)nodeId<<SEQUENCE_BITS)
+           | (next & SEQUENCE_MASK);
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  public int getNodeId() {
+    return nodeId;
+  }
+
+  /** the creation time of an id in millis since 1970 */
+  public static long getTimeMillis(long id) {
+    return (id>>>(NODE_BITS+SEQUENCE_BITS)) + EPOCH_MILLIS;
+  }
+
+  /** fixed length base 32 representation that sorts like the long value */
+  public static String toString(long id) {
+    char[] chars = new char[STRING_LENGTH];
+    for (int i=STRING_LENGTH-1; i>=0; i--) {
+      chars[i] = BASE32[(int)(id & 31)];
+      id >>>= 5;
+    }
+    return new String(chars);
+  }
+
+  /** parses a string id without prefix back into the long id */
+  public static long parse(String id) {
+    if (id==null || id.length()!=STRING_LENGTH) {
+      throw new RuntimeException("Invalid id: "+id);
+    }
+    long value = 0;
+    for (int i=0; i<STRING_LENGTH; i++) {
+      int digit = indexOf(Character.toUpperCase(id.charAt(i)));
+      if (digit<0) {
+        throw new RuntimeException("Invalid id: "+id);
+      }
+      value = (value<<5) | digit;
+    }
+    return value;
+  }
+
+  private static int indexOf(char c) {
+    for (int i=0; i<BASE32.length; i++) {
+      if (BASE32[i]==c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
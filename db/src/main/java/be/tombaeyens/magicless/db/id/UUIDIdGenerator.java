@@ -2,10 +2,13 @@ package be.tombaeyens.magicless.db.id;
 
 import java.util.UUID;
 
+/** Random ids.  Prefer the {@link TimeOrderedIdGenerator} for primary keys
+ * as random ids scatter inserts over the index. */
 public class UUIDIdGenerator implements IdGenerator {
 
   @Override
   public String generateId(String prefix) {
-    return UUID.randomUUID().toString();
+    String id = UUID.randomUUID().toString();
+    return prefix!=null ? prefix+id : id;
   }
 }
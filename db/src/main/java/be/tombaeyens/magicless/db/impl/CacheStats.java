@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Thread safe hit, miss and eviction counters for the caches in the db layer. */
+public class CacheStats {
+
+  LongAdder hits = new LongAdder();
+  LongAdder misses = new LongAdder();
+  LongAdder evictions = new LongAdder();
+
+  public void hit() {
+    hits.increment();
+  }
+
+  public void miss() {
+    misses.increment();
+  }
+
+  public void evictions(long count) {
+    evictions.add(count);
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /** fraction of the lookups that was a hit, 0 if there were no lookups yet */
+  public double getHitRatio() {
+    long hits = getHits();
+    long lookups = hits + getMisses();
+    return lookups!=0 ? (double) hits / lookups : 0;
+  }
+
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats(hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ")";
+  }
+}
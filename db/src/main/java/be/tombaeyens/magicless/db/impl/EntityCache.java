@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import be.tombaeyens.magicless.db.Table;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Caches the rows of a single table by primary key value across transactions.
+ *
+ * Rows are stored as values indexed by {@link be.tombaeyens.magicless.db.Column#getIndex()}.
+ * Like in the {@link QueryCache}, a version is incremented each time a transaction
+ * that updated or deleted rows in the table commits.  Rows read concurrently with
+ * such a commit are not put in the cache. */
+public class EntityCache {
+
+  Table table;
+  LruCache<Object,Object[]> rows;
+  AtomicLong version = new AtomicLong();
+
+  public EntityCache(Table table, int maxSize) {
+    this.table = table;
+    this.rows = new LruCache<>(maxSize);
+  }
+
+  public Object[] get(Object primaryKey) {
+    return rows.get(primaryKey);
+  }
+
+  /** to be called before the row is read from the db.
+   * Pass the returned version to {@link #put(Object, Object[], long)} */
+  public long getVersion() {
+    return version.get();
+  }
+
+  public void put(Object primaryKey, Object[] row, long versionBeforeRead) {
+    if (primaryKey!=null) {
+      synchronized (this) {
+        if (version.get()==versionBeforeRead) {
+          rows.put(primaryKey, row);
+        }
+      }
+    }
+  }
+
+  /** to be called after a transaction that updated or deleted the rows committed */
+  public void invalidate(Collection<Object> primaryKeys) {
+    synchronized (this) {
+      version.incrementAndGet();
+      primaryKeys.forEach(rows::remove);
+    }
+  }
+
+  /** to be called after a transaction that updated or deleted unknown rows committed */
+  public void invalidateAll() {
+    synchronized (this) {
+      version.incrementAndGet();
+      rows.clear();
+    }
+  }
+
+  public Table getTable() {
+    return table;
+  }
+
+  public int size() {
+    return rows.size();
+  }
+
+  public CacheStats getStats() {
+    return rows.getStats();
+  }
+}
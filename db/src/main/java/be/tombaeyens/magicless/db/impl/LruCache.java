@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/** Thread safe, size bounded cache that evicts the least recently used entries. */
+public class LruCache<K,V> {
+
+  int maxSize;
+  CacheStats stats = new CacheStats();
+  LinkedHashMap<K,V> entries;
+
+  public LruCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<K,V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        if (size()>LruCache.this.maxSize) {
+          stats.evictions(1);
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /** counts a hit or a miss */
+  public synchronized V get(K key) {
+    V value = entries.get(key);
+    if (value!=null) {
+      stats.hit();
+    } else {
+      stats.miss();
+    }
+    return value;
+  }
+
+  /** Like {@link #get(Object)}, but entries for which isValid returns false
+   * are removed and counted as a miss and an eviction */
+  public synchronized V get(K key, Predicate<V> isValid) {
+    V value = entries.get(key);
+    if (value!=null && !isValid.test(value)) {
+      entries.remove(key);
+      stats.evictions(1);
+      value = null;
+    }
+    if (value!=null) {
+      stats.hit();
+    } else {
+      stats.miss();
+    }
+    return value;
+  }
+
+  public synchronized void put(K key, V value) {
+    if (maxSize>0) {
+      entries.put(key, value);
+    }
+  }
+
+  /** removes the entry, which is counted as an eviction */
+  public synchronized void remove(K key) {
+    if (entries.remove(key)!=null) {
+      stats.evictions(1);
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public CacheStats getStats() {
+    return stats;
+  }
+}
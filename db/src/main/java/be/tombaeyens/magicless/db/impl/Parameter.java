@@ -36,7 +36,11 @@ public class Parameter {
     return type;
   }
 
+  /** computed on first use so that statements that are not logged don't pay for it */
   public String getLogValue() {
+    if (logValue==null) {
+      logValue = type.toLogText(value);
+    }
     return logValue;
   }
 
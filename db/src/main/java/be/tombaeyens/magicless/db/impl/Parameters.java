@@ -21,6 +21,7 @@ import java.sql.PreparedStatement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class Parameters {
 
@@ -33,23 +34,43 @@ public class Parameters {
     parameters.add(new Parameter(value, type));
   }
 
+  public int size() {
+    return parameters!=null ? parameters.size() : 0;
+  }
+
+  public List<Object> getValues() {
+    List<Object> values = new ArrayList<>();
+    if (parameters!=null) {
+      parameters.forEach(parameter->values.add(parameter.getValue()));
+    }
+    return values;
+  }
+
+  /** the sql with the ? replaced by the parameter log values.
+   * Only called when the sql is actually logged.  If the number of ?
+   * doesn't match the parameters, eg because of a ? in a literal, the
+   * parameter log values are appended instead. */
   public String toLogSql(String jdbcSql) {
-    String[] sqlSplit = jdbcSql.split("//?");
-    if (sqlSplit.length>1) {
-      if (parameters!=null && parameters.size()==sqlSplit.length-1) {
-        StringBuilder logSql = new StringBuilder();
-        logSql.append(sqlSplit[0]);
-        int splitIndex = 1;
-        for (Parameter parameter: parameters) {
-          String parameterLogText = parameter.getLogValue();
-          logSql.append(parameterLogText);
-          logSql.append(sqlSplit[splitIndex++]);
-        }
-      } else {
-        throw new RuntimeException("Parameter mismatch: \n"+jdbcSql+" \n"+ parameters);
-      }
+    if (parameters==null) {
+      return jdbcSql;
+    }
+    StringBuilder logSql = new StringBuilder();
+    int start = 0;
+    int parameterIndex = 0;
+    int questionMark = jdbcSql.indexOf('?');
+    while (questionMark!=-1 && parameterIndex<parameters.size()) {
+      logSql.append(jdbcSql, start, questionMark);
+      logSql.append(parameters.get(parameterIndex++).getLogValue());
+      start = questionMark+1;
+      questionMark = jdbcSql.indexOf('?', start);
+    }
+    if (questionMark!=-1 || parameterIndex<parameters.size()) {
+      return jdbcSql + "\n-- parameters " + parameters.stream()
+        .map(Parameter::getLogValue)
+        .collect(Collectors.joining(", "));
     }
-    return jdbcSql;
+    logSql.append(jdbcSql, start, jdbcSql.length());
+    return logSql.toString();
   }
 
   public void apply(PreparedStatement statement) {
@@ -59,7 +80,6 @@ public class Parameters {
         DataType type = parameter.getType();
         Object value = parameter.getValue();
         type.setParameter(statement, i + 1, value);
-        parameter.setLogValue(type.toLogText(value));
       }
     }
   }
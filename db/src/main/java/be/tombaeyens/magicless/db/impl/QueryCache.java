@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import be.tombaeyens.magicless.db.Table;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Caches select results by sql and parameter values.
+ *
+ * Every table has a version that is incremented when a transaction that
+ * wrote to the table commits.  A cached result remembers the versions of
+ * its tables from before the query was executed.  When one of them
+ * changed, the cached result is stale and is evicted on lookup.  That way
+ * results read concurrently with a committing write are never served
+ * after the commit.  Stale entries are evicted when they are looked up
+ * or when they are the least recently used. */
+public class QueryCache {
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  LruCache<Key,Entry> entries;
+  Map<Table,AtomicLong> tableVersions = new ConcurrentHashMap<>();
+
+  public QueryCache(int maxSize) {
+    this.entries = new LruCache<>(maxSize);
+  }
+
+  public static class Key {
+    String sql;
+    List<Object> parameterValues;
+    int hashCode;
+    public Key(String sql, List<Object> parameterValues) {
+      this.sql = sql;
+      this.parameterValues = parameterValues;
+      this.hashCode = 31 * sql.hashCode() + parameterValues.hashCode();
+    }
+    @Override
+    public boolean equals(Object o) {
+      if (this==o) {
+        return true;
+      }
+      if (o==null || getClass()!=o.getClass()) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hashCode==other.hashCode
+             && sql.equals(other.sql)
+             && parameterValues.equals(other.parameterValues);
+    }
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  public static class Entry {
+    List<Object[]> rows;
+    long expirationTime;
+    Table[] tables;
+    long[] tableVersions;
+    public List<Object[]> getRows() {
+      return rows;
+    }
+  }
+
+  /** captures the table versions before the query is executed.
+   * Pass the returned versions to {@link #put(Key, List, long, Table[], long[])} */
+  public long[] getTableVersions(Table[] tables) {
+    long[] versions = new long[tables.length];
+    for (int i=0; i<tables.length; i++) {
+      versions[i] = getTableVersion(tables[i]).get();
+    }
+    return versions;
+  }
+
+  public Entry get(Key key) {
+    return entries.get(key, entry->
+      entry.expirationTime>=System.currentTimeMillis()
+      && Arrays.equals(entry.tableVersions, getTableVersions(entry.tables)));
+  }
+
+  public void put(Key key, List<Object[]> rows, long ttlMillis, Table[] tables, long[] tableVersions) {
+    Entry entry = new Entry();
+    entry.rows = rows;
+    entry.expirationTime = System.currentTimeMillis() + ttlMillis;
+    entry.tables = tables;
+    entry.tableVersions = tableVersions;
+    entries.put(key, entry);
+  }
+
+  /** to be called after a transaction that wrote to the tables committed */
+  public void invalidate(Collection<Table> tables) {
+    tables.forEach(table->getTableVersion(table).incrementAndGet());
+  }
+
+  protected AtomicLong getTableVersion(Table table) {
+    return tableVersions.computeIfAbsent(Objects.requireNonNull(table), t->new AtomicLong());
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public CacheStats getStats() {
+    return entries.getStats();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import be.tombaeyens.magicless.db.Statement;
+
+import java.util.function.Function;
+
+/** Caches the generated SQL per {@link SqlShape} so that statements with
+ * the same structure but different parameter values skip SQL generation.
+ *
+ * Each {@link be.tombaeyens.magicless.db.Db} has its own cache.  The number of
+ * distinct statement shapes in an application is normally small.  In case the
+ * max size is exceeded anyway (eg by dynamically built conditions), the least
+ * recently used shapes are evicted so that memory stays bounded and the
+ * frequent shapes stay cached. */
+public class SqlCache {
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  LruCache<SqlShape,String> sqls;
+
+  public SqlCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public SqlCache(int maxSize) {
+    this.sqls = new LruCache<>(maxSize);
+  }
+
+  public <S extends Statement> String getSql(S statement, Function<S,String> sqlBuilder) {
+    SqlShape sqlShape = new SqlShape();
+    statement.collectSqlShape(sqlShape);
+    if (!sqlShape.isCacheable()) {
+      sqls.getStats().miss();
+      return sqlBuilder.apply(statement);
+    }
+    String sql = sqls.get(sqlShape);
+    if (sql==null) {
+      sql = sqlBuilder.apply(statement);
+      sqls.put(sqlShape, sql);
+    }
+    return sql;
+  }
+
+  public int size() {
+    return sqls.size();
+  }
+
+  public void clear() {
+    sqls.clear();
+  }
+
+  public CacheStats getStats() {
+    return sqls.getStats();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Cache key that captures everything that influences the generated SQL
+ * of a statement (tables, aliases, fields, condition structure, order by...)
+ * but none of the parameter values.
+ *
+ * Tables, columns and other schema objects are compared by identity, which
+ * is what we want as they are typically declared as static constants. */
+public class SqlShape {
+
+  List<Object> parts = new ArrayList<>();
+  boolean cacheable = true;
+  int hashCode;
+
+  public SqlShape add(Object part) {
+    parts.add(part);
+    hashCode = 31 * hashCode + (part!=null ? part.hashCode() : 0);
+    return this;
+  }
+
+  /** to be called when a part of the statement can't describe its shape,
+   * which means the generated SQL can't be cached. */
+  public void uncacheable() {
+    this.cacheable = false;
+  }
+
+  public boolean isCacheable() {
+    return cacheable;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this==o) {
+      return true;
+    }
+    if (o==null || getClass()!=o.getClass()) {
+      return false;
+    }
+    SqlShape other = (SqlShape) o;
+    return hashCode==other.hashCode && parts.equals(other.parts);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return "SqlShape" + parts;
+  }
+}
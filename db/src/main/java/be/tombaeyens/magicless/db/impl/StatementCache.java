@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Bounded, least recently used cache of {@link PreparedStatement}s for
+ * a single connection.
+ *
+ * Statements are checked out for the duration of an execution (for
+ * selects until the results are closed) so that a statement is never
+ * shared by 2 executions that are in progress at the same time.  If
+ * the cached statement for a sql is in use, a new statement is prepared.
+ *
+ * Evicted statements are closed, or when they are in use, closed when
+ * they are checked in.  Not thread safe: use one cache per connection. */
+public class StatementCache {
+
+  Connection connection;
+  int maxSize;
+  CacheStats stats;
+  Map<String,PreparedStatement> statements;
+  /** the values of statements, to check membership without affecting the access order */
+  Set<PreparedStatement> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+  Set<PreparedStatement> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  public StatementCache(Connection connection, int maxSize, CacheStats stats) {
+    this.connection = connection;
+    this.maxSize = maxSize;
+    this.stats = stats;
+    this.statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+        if (size()>StatementCache.this.maxSize) {
+          StatementCache.this.stats.evictions(1);
+          PreparedStatement evicted = eldest.getValue();
+          cached.remove(evicted);
+          if (!inUse.contains(evicted)) {
+            close(evicted);
+          }
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public PreparedStatement checkOut(String sql) throws SQLException {
+    PreparedStatement statement = maxSize>0 ? statements.get(sql) : null;
+    if (statement!=null && !inUse.contains(statement)) {
+      stats.hit();
+      statement.clearParameters();
+    } else {
+      stats.miss();
+      boolean isCached = statement!=null;
+      statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      if (maxSize>0 && !isCached) {
+        statements.put(sql, statement);
+        cached.add(statement);
+      }
+    }
+    inUse.add(statement);
+    return statement;
+  }
+
+  public void checkIn(String sql, PreparedStatement statement) {
+    inUse.remove(statement);
+    if (!cached.contains(statement)) {
+      close(statement);
+    }
+  }
+
+  /** closes all statements, including the ones that are still in use */
+  public void close() {
+    statements.values().forEach(this::close);
+    inUse.forEach(this::close);
+    statements.clear();
+    cached.clear();
+    inUse.clear();
+  }
+
+  void close(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      DB_LOGGER.error("Couldn't close prepared statement: " + e.getMessage(), e);
+    }
+  }
+}
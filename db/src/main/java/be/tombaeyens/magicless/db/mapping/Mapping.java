@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.mapping;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Table;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNull;
+import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNullParameter;
+import static be.tombaeyens.magicless.app.util.Exceptions.assertSame;
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
+
+/** Explicit mapping between the columns of a table and the properties of a bean.
+ *
+ * The property accessors are resolved once and compiled into lambdas
+ * (with {@link LambdaMetafactory} for methods, {@link MethodHandle}s for fields)
+ * so that mapping rows doesn't use reflection nor lookups per value.
+ *
+ * <pre>
+ * static final Mapping&lt;User&gt; USER_MAPPING = new Mapping&lt;&gt;(User.class, User::new)
+ *   .column(Users.ID)
+ *   .column(Users.FIRST_NAME, "firstName")
+ *   .column(Users.EMAIL);
+ *
+ * List&lt;User&gt; users = tx.newSelect(Users.TABLE)
+ *   .execute()
+ *   .getAll(USER_MAPPING.getRowMapper());
+ * </pre>
+ *
+ * For writing a property, a fluent method <code>name(value)</code>, a setter
+ * <code>setName(value)</code> or the field are used in that order of preference.
+ * For reading a property, <code>getName()</code>, <code>isName()</code>,
+ * <code>name()</code> or the field.  Fields don't have to be public.
+ */
+public class Mapping<T> {
+
+  static Logger log = LoggerFactory.getLogger(Mapping.class);
+
+  Class<T> type;
+  Supplier<T> constructor;
+  Table table;
+  List<ColumnProperty> columnProperties = new ArrayList<>();
+  RowMapper<T> rowMapper;
+  RowBinder<T> rowBinder;
+
+  static class ColumnProperty {
+    Column column;
+    String property;
+    BiConsumer<Object,Object> setter;
+    Function<Object,Object> getter;
+    boolean isPrimitive;
+    ColumnProperty(Column column, String property) {
+      this.column = column;
+      this.property = property;
+    }
+  }
+
+  public Mapping(Class<T> type, Supplier<T> constructor) {
+    assertNotNullParameter(type, "type");
+    assertNotNullParameter(constructor, "constructor");
+    this.type = type;
+    this.constructor = constructor;
+  }
+
+  /** maps the column to the property with the same name as the column */
+  public Mapping<T> column(Column column) {
+    return column(column, column.getName());
+  }
+
+  public Mapping<T> column(Column column, String property) {
+    assertNotNullParameter(column, "column");
+    assertNotNullParameter(property, "property");
+    assertNotNull(column.getTable(), "Column %s isn't added to a table.", column.getName());
+    if (table==null) {
+      table = column.getTable();
+    }
+    assertSame(table, column.getTable(), "All columns of a mapping must be from the same table");
+    columnProperties.add(new ColumnProperty(column, property));
+    rowMapper = null;
+    rowBinder = null;
+    return this;
+  }
+
+  /** maps all columns of the table to the properties with the same name */
+  public Mapping<T> columns(Table table) {
+    table.getColumns().values().forEach(this::column);
+    return this;
+  }
+
+  public synchronized RowMapper<T> getRowMapper() {
+    if (rowMapper==null) {
+      ColumnProperty[] properties = compile(true);
+      rowMapper = selectResults->{
+        T object = constructor.get();
+        for (ColumnProperty property: properties) {
+          Object value = selectResults.get(property.column);
+          if (value!=null || !property.isPrimitive) {
+            property.setter.accept(object, value);
+          }
+        }
+        return object;
+      };
+    }
+    return rowMapper;
+  }
+
+  public synchronized RowBinder<T> getRowBinder() {
+    if (rowBinder==null) {
+      ColumnProperty[] properties = compile(false);
+      rowBinder = (object, columnValueConsumer)->{
+        for (ColumnProperty property: properties) {
+          columnValueConsumer.accept(property.column, property.getter.apply(object));
+        }
+      };
+    }
+    return rowBinder;
+  }
+
+  protected ColumnProperty[] compile(boolean setters) {
+    ColumnProperty[] properties = columnProperties.toArray(new ColumnProperty[columnProperties.size()]);
+    for (ColumnProperty property: properties) {
+      try {
+        if (setters && property.setter==null) {
+          compileSetter(property);
+        } else if (!setters && property.getter==null) {
+          property.getter = compileGetter(property.property);
+        }
+      } catch (Throwable e) {
+        throw exceptionWithCause("compile accessor for property "+type.getSimpleName()+"."+property.property, e);
+      }
+    }
+    return properties;
+  }
+
+  protected void compileSetter(ColumnProperty property) throws Throwable {
+    String capitalized = capitalize(property.property);
+    Class<?> propertyType = findPropertyType(property.property);
+    Method method = findSetterMethod(property.property, propertyType);
+    if (method==null) {
+      method = findSetterMethod("set"+capitalized, propertyType);
+    }
+    if (method!=null) {
+      property.isPrimitive = method.getParameterTypes()[0].isPrimitive();
+      property.setter = compileSetterMethod(method);
+      return;
+    }
+    Field field = findField(property.property);
+    assertNotNull(field, "No setter or field found for property %s in %s", property.property, type.getName());
+    property.isPrimitive = field.getType().isPrimitive();
+    field.setAccessible(true);
+    MethodHandle setter = MethodHandles.lookup()
+      .unreflectSetter(field)
+      .asType(MethodType.methodType(void.class, Object.class, Object.class));
+    property.setter = (object, value)->invokeSetter(setter, object, value);
+  }
+
+  protected Function<Object,Object> compileGetter(String property) throws Throwable {
+    Method method = findGetterMethod(property);
+    if (method!=null) {
+      return compileGetterMethod(method);
+    }
+    Field field = findField(property);
+    assertNotNull(field, "No getter or field found for property %s in %s", property, type.getName());
+    field.setAccessible(true);
+    MethodHandle getter = MethodHandles.lookup()
+      .unreflectGetter(field)
+      .asType(MethodType.methodType(Object.class, Object.class));
+    return object->invokeGetter(getter, object);
+  }
+
+  @SuppressWarnings("unchecked")
+  protected BiConsumer<Object,Object> compileSetterMethod(Method method) throws Throwable {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodHandle methodHandle = lookup.unreflect(method);
+    if (isLambdaCompatible(method)) {
+      try {
+        Class<?> parameterType = box(method.getParameterTypes()[0]);
+        CallSite callSite = LambdaMetafactory.metafactory(
+          lookup,
+          "accept",
+          MethodType.methodType(BiConsumer.class),
+          MethodType.methodType(void.class, Object.class, Object.class),
+          methodHandle,
+          MethodType.methodType(void.class, type, parameterType));
+        return (BiConsumer<Object,Object>) callSite.getTarget().invoke();
+      } catch (LambdaConversionException e) {
+        // eg when the bean class is not visible from this class loader
+        log.debug("Falling back to method handle for "+method+": "+e.getMessage());
+      }
+    }
+    MethodHandle setter = methodHandle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+    return (object, value)->invokeSetter(setter, object, value);
+  }
+
+  @SuppressWarnings("unchecked")
+  protected Function<Object,Object> compileGetterMethod(Method method) throws Throwable {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodHandle methodHandle = lookup.unreflect(method);
+    if (isLambdaCompatible(method)) {
+      try {
+        CallSite callSite = LambdaMetafactory.metafactory(
+          lookup,
+          "apply",
+          MethodType.methodType(Function.class),
+          MethodType.methodType(Object.class, Object.class),
+          methodHandle,
+          MethodType.methodType(box(method.getReturnType()), type));
+        return (Function<Object,Object>) callSite.getTarget().invoke();
+      } catch (LambdaConversionException e) {
+        log.debug("Falling back to method handle for "+method+": "+e.getMessage());
+      }
+    }
+    MethodHandle getter = methodHandle.asType(MethodType.methodType(Object.class, Object.class));
+    return object->invokeGetter(getter, object);
+  }
+
+  /** the generated lambda classes can only call public methods of public classes */
+  protected boolean isLambdaCompatible(Method method) {
+    return Modifier.isPublic(method.getModifiers())
+           && Modifier.isPublic(method.getDeclaringClass().getModifiers())
+           && Modifier.isPublic(type.getModifiers());
+  }
+
+  static void invokeSetter(MethodHandle setter, Object object, Object value) {
+    try {
+      setter.invokeExact(object, value);
+    } catch (Throwable e) {
+      throw exceptionWithCause("set property value "+value, e);
+    }
+  }
+
+  static Object invokeGetter(MethodHandle getter, Object object) {
+    try {
+      return (Object) getter.invokeExact(object);
+    } catch (Throwable e) {
+      throw exceptionWithCause("get property value", e);
+    }
+  }
+
+  protected Method findGetterMethod(String property) {
+    String capitalized = capitalize(property);
+    Method method = findMethod("get"+capitalized, 0);
+    if (method==null) {
+      method = findMethod("is"+capitalized, 0);
+    }
+    if (method==null) {
+      method = findMethod(property, 0);
+    }
+    return method!=null && method.getReturnType()!=void.class ? method : null;
+  }
+
+  /** the type of the field or otherwise the return type of the getter, null if neither exists */
+  protected Class<?> findPropertyType(String property) {
+    Field field = findField(property);
+    if (field!=null) {
+      return field.getType();
+    }
+    Method getter = findGetterMethod(property);
+    return getter!=null ? getter.getReturnType() : null;
+  }
+
+  /** Finds the single parameter method with the given name that accepts the
+   * property type.  Without a known property type, the method must not be
+   * overloaded so that the choice doesn't depend on the reflection order. */
+  protected Method findSetterMethod(String name, Class<?> propertyType) {
+    List<Method> candidates = findMethods(name, 1);
+    if (propertyType!=null) {
+      for (Method candidate: candidates) {
+        if (box(candidate.getParameterTypes()[0])==box(propertyType)) {
+          return candidate;
+        }
+      }
+      return null;
+    }
+    if (candidates.size()>1) {
+      throw new RuntimeException("Setter "+type.getName()+"."+name+" is overloaded and there is no field or getter to determine the property type");
+    }
+    return candidates.isEmpty() ? null : candidates.get(0);
+  }
+
+  protected Method findMethod(String name, int parameterCount) {
+    List<Method> methods = findMethods(name, parameterCount);
+    return methods.isEmpty() ? null : methods.get(0);
+  }
+
+  /** methods of subclasses come before the methods they override */
+  protected List<Method> findMethods(String name, int parameterCount) {
+    List<Method> methods = new ArrayList<>();
+    for (Class<?> clazz = type; clazz!=null && clazz!=Object.class; clazz = clazz.getSuperclass()) {
+      for (Method method: clazz.getDeclaredMethods()) {
+        if (method.getName().equals(name)
+            && method.getParameterCount()==parameterCount
+            && !Modifier.isStatic(method.getModifiers())
+            && !method.isBridge()) {
+          method.setAccessible(true);
+          methods.add(method);
+        }
+      }
+    }
+    return methods;
+  }
+
+  protected Field findField(String name) {
+    for (Class<?> clazz = type; clazz!=null && clazz!=Object.class; clazz = clazz.getSuperclass()) {
+      for (Field field: clazz.getDeclaredFields()) {
+        if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+          return field;
+        }
+      }
+    }
+    return null;
+  }
+
+  static String capitalize(String property) {
+    return Character.toUpperCase(property.charAt(0)) + property.substring(1);
+  }
+
+  static Class<?> box(Class<?> clazz) {
+    if (!clazz.isPrimitive()) {
+      return clazz;
+    }
+    return MethodType.methodType(clazz).wrap().returnType();
+  }
+
+  public Class<T> getType() {
+    return type;
+  }
+
+  public Table getTable() {
+    return table;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.mapping;
+
+import be.tombaeyens.magicless.db.BatchInsert;
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Insert;
+import be.tombaeyens.magicless.db.Update;
+
+import java.util.function.BiConsumer;
+
+/** Sets the column values of an object on insert and update statements. */
+public interface RowBinder<T> {
+
+  /** passes the value of each mapped column to columnValueConsumer */
+  void bind(T object, BiConsumer<Column,Object> columnValueConsumer);
+
+  default Insert bind(Insert insert, T object) {
+    bind(object, insert::set);
+    return insert;
+  }
+
+  /** usable as row binder in {@link BatchInsert#execute(java.util.stream.Stream, BiConsumer)} */
+  default BatchInsert bind(BatchInsert batchInsert, T object) {
+    bind(object, batchInsert::set);
+    return batchInsert;
+  }
+
+  default Update bind(Update update, T object) {
+    bind(object, update::set);
+    return update;
+  }
+}
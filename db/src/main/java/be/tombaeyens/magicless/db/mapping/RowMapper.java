@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.mapping;
+
+import be.tombaeyens.magicless.db.SelectResults;
+
+import java.util.function.Function;
+
+/** Creates an object from the current row of {@link SelectResults}.
+ * Can be passed to {@link SelectResults#getAll(Function)} and Stream.map. */
+public interface RowMapper<T> extends Function<SelectResults,T> {
+
+  T map(SelectResults selectResults);
+
+  @Override
+  default T apply(SelectResults selectResults) {
+    return map(selectResults);
+  }
+}
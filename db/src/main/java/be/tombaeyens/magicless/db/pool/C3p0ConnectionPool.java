@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.pool;
+
+import be.tombaeyens.magicless.db.DbConfiguration;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
+
+/** {@link ConnectionPool} based on c3p0's {@link ComboPooledDataSource}. */
+public class C3p0ConnectionPool implements ConnectionPool {
+
+  protected ComboPooledDataSource dataSource;
+  protected ConnectionPoolStats.AcquireLatency acquireLatency = new ConnectionPoolStats.AcquireLatency();
+
+  public C3p0ConnectionPool(DbConfiguration dbConfiguration) {
+    try {
+      dataSource = new ComboPooledDataSource();
+      dataSource.setDriverClass(dbConfiguration.getDriver()); //loads the jdbc driver
+      dataSource.setJdbcUrl(dbConfiguration.getUrl());
+      dataSource.setUser(dbConfiguration.getUsername());
+      dataSource.setPassword(dbConfiguration.getPassword());
+      dataSource.setAcquireRetryAttempts(1);
+      dataSource.setMinPoolSize(dbConfiguration.getMinPoolSize());
+      dataSource.setInitialPoolSize(dbConfiguration.getMinPoolSize());
+      dataSource.setMaxPoolSize(dbConfiguration.getMaxPoolSize());
+      dataSource.setCheckoutTimeout((int) dbConfiguration.getAcquireTimeoutMillis());
+      dataSource.setMaxIdleTimeExcessConnections(toSeconds(dbConfiguration.getMaxIdleTimeMillis()));
+      dataSource.setMaxConnectionAge(toSeconds(dbConfiguration.getMaxLifetimeMillis()));
+      dataSource.setTestConnectionOnCheckout(dbConfiguration.isValidateOnCheckout());
+      // c3p0 caches the prepared statements across transactions
+      // and closes them when they get evicted
+      dataSource.setMaxStatementsPerConnection(dbConfiguration.getMaxStatementsPerConnection());
+    } catch (Exception e) {
+      throw exceptionWithCause("create c3p0 data source " + dbConfiguration.getUrl(), e);
+    }
+  }
+
+  static int toSeconds(long millis) {
+    return (int) TimeUnit.MILLISECONDS.toSeconds(millis);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    long startNanos = System.nanoTime();
+    Connection connection = dataSource.getConnection();
+    acquireLatency.record(startNanos);
+    return connection;
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  @Override
+  public ConnectionPoolStats getStats() {
+    try {
+      return new ConnectionPoolStats(
+        dataSource.getNumBusyConnectionsDefaultUser(),
+        dataSource.getNumIdleConnectionsDefaultUser(),
+        dataSource.getNumThreadsAwaitingCheckoutDefaultUser(),
+        acquireLatency);
+    } catch (SQLException e) {
+      throw exceptionWithCause("get c3p0 pool stats", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    dataSource.close();
+  }
+}
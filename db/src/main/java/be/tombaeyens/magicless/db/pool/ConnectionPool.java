@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.pool;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/** Hands out jdbc connections to {@link be.tombaeyens.magicless.db.Db}.
+ * Closing a connection obtained from the pool returns it to the pool.
+ *
+ * Configure the implementation with {@link be.tombaeyens.magicless.db.DbConfiguration#connectionPool(String)}. */
+public interface ConnectionPool extends AutoCloseable {
+
+  Connection getConnection() throws SQLException;
+
+  /** the pool exposed as a DataSource for libraries that need one */
+  DataSource getDataSource();
+
+  ConnectionPoolStats getStats();
+
+  /** closes all connections in the pool */
+  @Override
+  void close();
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.pool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Snapshot of the state of a {@link ConnectionPool}. */
+public class ConnectionPoolStats {
+
+  int active;
+  int idle;
+  int waiting;
+  long acquires;
+  long acquireNanos;
+  long maxAcquireNanos;
+
+  public ConnectionPoolStats(int active, int idle, int waiting, AcquireLatency acquireLatency) {
+    this.active = active;
+    this.idle = idle;
+    this.waiting = waiting;
+    this.acquires = acquireLatency.count.sum();
+    this.acquireNanos = acquireLatency.nanos.sum();
+    this.maxAcquireNanos = acquireLatency.maxNanos.get();
+  }
+
+  /** number of connections that are checked out */
+  public int getActive() {
+    return active;
+  }
+
+  /** number of connections that are open and available in the pool */
+  public int getIdle() {
+    return idle;
+  }
+
+  /** number of threads that are waiting for a connection */
+  public int getWaiting() {
+    return waiting;
+  }
+
+  /** number of connections handed out by the pool */
+  public long getAcquires() {
+    return acquires;
+  }
+
+  public double getAverageAcquireMillis() {
+    return acquires!=0 ? (double) acquireNanos / acquires / 1000000d : 0d;
+  }
+
+  public double getMaxAcquireMillis() {
+    return (double) maxAcquireNanos / 1000000d;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("active=%d, idle=%d, waiting=%d, acquires=%d, avgAcquire=%.3fms, maxAcquire=%.3fms",
+      active, idle, waiting, acquires, getAverageAcquireMillis(), getMaxAcquireMillis());
+  }
+
+  /** Records the time it takes to obtain connections from a pool. */
+  public static class AcquireLatency {
+
+    LongAdder count = new LongAdder();
+    LongAdder nanos = new LongAdder();
+    LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /** @param startNanos {@link System#nanoTime()} before the connection was requested */
+    public void record(long startNanos) {
+      long duration = System.nanoTime() - startNanos;
+      count.increment();
+      nanos.add(duration);
+      maxNanos.accumulate(duration);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotalMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Selects a replica {@link ConnectionPool} for read only transactions.
+ *
+ * A replica that fails to hand out a connection is skipped for
+ * {@link #DOWN_MILLIS}.  When no replica is available, null is returned
+ * so that the caller can fall back to the primary. */
+public class ReplicaRouter {
+
+  /** {@link be.tombaeyens.magicless.db.DbConfiguration#replicaSelection(String)} value */
+  public static final String ROUND_ROBIN = "roundrobin";
+  /** {@link be.tombaeyens.magicless.db.DbConfiguration#replicaSelection(String)} value */
+  public static final String LEAST_BUSY = "leastbusy";
+
+  static final long DOWN_MILLIS = 5000;
+
+  protected List<ConnectionPool> replicas;
+  protected boolean leastBusy;
+  protected AtomicInteger nextReplica = new AtomicInteger();
+  /** per replica, the time until which it is skipped */
+  protected AtomicLongArray downUntil;
+
+  public ReplicaRouter(List<ConnectionPool> replicas, String replicaSelection) {
+    this.replicas = replicas;
+    this.leastBusy = LEAST_BUSY.equals(replicaSelection);
+    this.downUntil = new AtomicLongArray(replicas.size());
+  }
+
+  /** a connection to one of the replicas or null if no replica is available */
+  public Connection getConnection() {
+    int first = leastBusy ? getLeastBusyReplica() : Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+    for (int i=0; i<replicas.size(); i++) {
+      int replica = (first + i) % replicas.size();
+      if (downUntil.get(replica)<System.currentTimeMillis()) {
+        try {
+          return replicas.get(replica).getConnection();
+        } catch (SQLException e) {
+          DB_LOGGER.warn("Replica " + replica + " unavailable: " + e.getMessage());
+          downUntil.set(replica, System.currentTimeMillis() + DOWN_MILLIS);
+        }
+      }
+    }
+    return null;
+  }
+
+  protected int getLeastBusyReplica() {
+    int leastBusyReplica = 0;
+    int leastActive = Integer.MAX_VALUE;
+    for (int i=0; i<replicas.size(); i++) {
+      int active = replicas.get(i).getStats().getActive();
+      if (active<leastActive) {
+        leastActive = active;
+        leastBusyReplica = i;
+      }
+    }
+    return leastBusyReplica;
+  }
+
+  public List<ConnectionPool> getReplicas() {
+    return replicas;
+  }
+
+  public void close() {
+    replicas.forEach(ConnectionPool::close);
+  }
+}
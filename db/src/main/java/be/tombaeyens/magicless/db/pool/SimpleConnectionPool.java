@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.pool;
+
+import be.tombaeyens.magicless.db.DbConfiguration;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
+import static be.tombaeyens.magicless.db.Db.DB_LOGGER;
+
+/** Lightweight {@link ConnectionPool}.
+ *
+ * Idle connections are kept in a lock-free deque.  The most recently used
+ * connection is handed out first so that the connections at the other end
+ * can be closed when they are idle for longer than the max idle time.
+ * Idle connections are evicted on checkout, on release and periodically
+ * by a single daemon thread that is shared by all pools, so that a quiet
+ * pool also releases its connections.  Like in c3p0, a max idle time of 0
+ * means that idle connections are never closed.
+ * The max pool size is enforced with a non-fair {@link Semaphore}: while
+ * connections are available, a checkout is a single compare-and-set on the
+ * permit count.  Threads only queue when all connections are checked out.
+ * Checked out connections are {@link DelegatingConnection}s that return
+ * the connection to the pool on close.
+ *
+ * The pool is filled with min pool size connections when it's created.
+ * More connections are opened lazily, up to the max pool size.  The min pool
+ * size is also the number of connections that are not closed when they
+ * become idle. */
+public class SimpleConnectionPool implements ConnectionPool {
+
+  protected String url;
+  protected String username;
+  protected String password;
+  protected int minPoolSize;
+  protected long acquireTimeoutMillis;
+  protected long maxIdleTimeMillis;
+  protected long maxLifetimeMillis;
+  protected boolean validateOnCheckout;
+
+  protected ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+  protected AtomicInteger idleCount = new AtomicInteger();
+  protected AtomicInteger activeCount = new AtomicInteger();
+  protected Semaphore permits;
+  protected ConnectionPoolStats.AcquireLatency acquireLatency = new ConnectionPoolStats.AcquireLatency();
+  protected DataSource dataSource = new PoolDataSource();
+  protected volatile boolean closed;
+  protected ScheduledFuture<?> evictionTask;
+
+  static final long MIN_EVICTION_INTERVAL_MILLIS = 10;
+  static final long MAX_EVICTION_INTERVAL_MILLIS = 30000;
+  private static ScheduledExecutorService evictionExecutor;
+
+  private static synchronized ScheduledExecutorService getEvictionExecutor() {
+    if (evictionExecutor==null) {
+      evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable->{
+        Thread thread = new Thread(runnable, "connection-pool-eviction");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return evictionExecutor;
+  }
+
+  public SimpleConnectionPool(DbConfiguration dbConfiguration) {
+    this.url = dbConfiguration.getUrl();
+    this.username = dbConfiguration.getUsername();
+    this.password = dbConfiguration.getPassword();
+    this.minPoolSize = dbConfiguration.getMinPoolSize();
+    this.acquireTimeoutMillis = dbConfiguration.getAcquireTimeoutMillis();
+    this.maxIdleTimeMillis = dbConfiguration.getMaxIdleTimeMillis();
+    this.maxLifetimeMillis = dbConfiguration.getMaxLifetimeMillis();
+    this.validateOnCheckout = dbConfiguration.isValidateOnCheckout();
+    this.permits = new Semaphore(dbConfiguration.getMaxPoolSize(), false);
+    if (dbConfiguration.getDriver()!=null) {
+      try {
+        Class.forName(dbConfiguration.getDriver());
+      } catch (ClassNotFoundException e) {
+        throw exceptionWithCause("load jdbc driver " + dbConfiguration.getDriver(), e);
+      }
+    }
+    if (maxIdleTimeMillis>0) {
+      long intervalMillis = Math.min(Math.max(maxIdleTimeMillis/2, MIN_EVICTION_INTERVAL_MILLIS), MAX_EVICTION_INTERVAL_MILLIS);
+      this.evictionTask = getEvictionExecutor().scheduleWithFixedDelay(
+        this::evictIdleConnections, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    fill(Math.min(minPoolSize, dbConfiguration.getMaxPoolSize()));
+  }
+
+  /** opens idle connections until there are count connections.  Failures
+   * are logged and the pool continues to open connections lazily. */
+  protected void fill(int count) {
+    try {
+      while (idleCount.get() + activeCount.get() < count) {
+        idleConnections.addLast(new PooledConnection(openConnection()));
+        idleCount.incrementAndGet();
+      }
+    } catch (SQLException | RuntimeException e) {
+      DB_LOGGER.warn("Couldn't open the min pool size connections: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    long startNanos = System.nanoTime();
+    if (closed) {
+      throw new SQLException("Connection pool is closed");
+    }
+    try {
+      if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLTimeoutException("No connection available after " + acquireTimeoutMillis + "ms: " + getStats());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection", e);
+    }
+    try {
+      evictIdleConnections();
+      PooledConnection pooledConnection = takeIdleConnection();
+      if (pooledConnection==null) {
+        pooledConnection = new PooledConnection(openConnection());
+      }
+      activeCount.incrementAndGet();
+      acquireLatency.record(startNanos);
+      return pooledConnection.checkOut();
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  protected Connection openConnection() throws SQLException {
+    return DriverManager.getConnection(url, username, password);
+  }
+
+  protected PooledConnection takeIdleConnection() {
+    long now = System.currentTimeMillis();
+    PooledConnection pooledConnection = idleConnections.pollFirst();
+    while (pooledConnection!=null) {
+      idleCount.decrementAndGet();
+      if (!pooledConnection.isExpired(now)
+          && (!validateOnCheckout || pooledConnection.isValid())) {
+        return pooledConnection;
+      }
+      pooledConnection.closeConnection();
+      pooledConnection = idleConnections.pollFirst();
+    }
+    return null;
+  }
+
+  protected void release(PooledConnection pooledConnection) {
+    activeCount.decrementAndGet();
+    try {
+      long now = System.currentTimeMillis();
+      if (!closed
+          && !pooledConnection.isExpired(now)
+          && pooledConnection.reset()) {
+        pooledConnection.lastUsed = now;
+        idleConnections.addFirst(pooledConnection);
+        idleCount.incrementAndGet();
+      } else {
+        pooledConnection.closeConnection();
+      }
+    } finally {
+      permits.release();
+    }
+    evictIdleConnections();
+  }
+
+  /** closes the least recently used connections that exceeded the max idle time */
+  protected void evictIdleConnections() {
+    if (maxIdleTimeMillis<=0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    PooledConnection leastRecentlyUsed = idleConnections.peekLast();
+    while (leastRecentlyUsed!=null
+           && now - leastRecentlyUsed.lastUsed > maxIdleTimeMillis
+           && idleCount.get() + activeCount.get() > minPoolSize
+           && idleConnections.removeLastOccurrence(leastRecentlyUsed)) {
+      idleCount.decrementAndGet();
+      leastRecentlyUsed.closeConnection();
+      leastRecentlyUsed = idleConnections.peekLast();
+    }
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  @Override
+  public ConnectionPoolStats getStats() {
+    return new ConnectionPoolStats(
+      activeCount.get(),
+      idleCount.get(),
+      permits.getQueueLength(),
+      acquireLatency);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (evictionTask!=null) {
+      evictionTask.cancel(false);
+    }
+    PooledConnection pooledConnection = idleConnections.pollFirst();
+    while (pooledConnection!=null) {
+      idleCount.decrementAndGet();
+      pooledConnection.closeConnection();
+      pooledConnection = idleConnections.pollFirst();
+    }
+  }
+
+  protected class PooledConnection {
+
+    Connection connection;
+    long created = System.currentTimeMillis();
+    long lastUsed = created;
+
+    PooledConnection(Connection connection) {
+      this.connection = connection;
+    }
+
+    boolean isExpired(long now) {
+      return maxLifetimeMillis>0 && now - created > maxLifetimeMillis;
+    }
+
+    boolean isValid() {
+      try {
+        return connection.isValid(5);
+      } catch (SQLException e) {
+        return false;
+      }
+    }
+
+    /** rolls back unfinished work and restores the jdbc defaults.
+     * @return false if the connection can't be reused. */
+    boolean reset() {
+      try {
+        if (connection.isClosed()) {
+          return false;
+        }
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        }
+        return true;
+      } catch (SQLException e) {
+        DB_LOGGER.debug("Discarding pooled connection: " + e.getMessage());
+        return false;
+      }
+    }
+
+    void closeConnection() {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        DB_LOGGER.debug("Pooled connection close: " + e.getMessage());
+      }
+    }
+
+    /** a connection that returns this pooled connection to the pool on close */
+    Connection checkOut() {
+      return new CheckedOutConnection(this);
+    }
+  }
+
+  protected class CheckedOutConnection extends DelegatingConnection {
+
+    PooledConnection pooledConnection;
+    boolean closed;
+
+    CheckedOutConnection(PooledConnection pooledConnection) {
+      super(pooledConnection.connection);
+      this.pooledConnection = pooledConnection;
+    }
+
+    @Override
+    protected Connection getDelegate() throws SQLException {
+      if (closed) {
+        throw new SQLException("Connection is closed");
+      }
+      return delegate;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        release(pooledConnection);
+      }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+      return closed || delegate.isClosed();
+    }
+
+    @Override
+    public String toString() {
+      return "Pooled" + delegate;
+    }
+  }
+
+  protected class PoolDataSource implements DataSource {
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      return SimpleConnectionPool.this.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+      throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+      return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+      return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+      if (iface.isInstance(SimpleConnectionPool.this)) {
+        return (T) SimpleConnectionPool.this;
+      }
+      throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+      return iface.isInstance(SimpleConnectionPool.this);
+    }
+  }
+}
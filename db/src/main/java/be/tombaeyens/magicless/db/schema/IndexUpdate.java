@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.schema;
+
+import be.tombaeyens.magicless.db.Tx;
+
+import java.util.function.Consumer;
+
+import static be.tombaeyens.magicless.app.util.Exceptions.assertNotNullParameter;
+
+/** See {@link SchemaUpdate#createIndex(String, be.tombaeyens.magicless.db.Index)}
+ * and {@link SchemaUpdate#dropIndex(String, be.tombaeyens.magicless.db.Index)} */
+class IndexUpdate implements SchemaUpdate {
+
+  String id;
+  Consumer<Tx> update;
+
+  IndexUpdate(String id, Consumer<Tx> update) {
+    assertNotNullParameter(id, "id");
+    this.id = id;
+    this.update = update;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public void update(Tx tx) {
+    update.accept(tx);
+  }
+}
@@ -18,9 +18,13 @@ package be.tombaeyens.magicless.db.schema;
 import be.tombaeyens.magicless.app.container.Inject;
 import be.tombaeyens.magicless.app.util.Time;
 import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.Tx;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -33,9 +37,16 @@ public class SchemaManager {
 
   static Logger log = LoggerFactory.getLogger(SchemaManager.class);
 
+  public static final long DEFAULT_LOCK_LEASE_MILLIS = 10*60*1000;
+  public static final long DEFAULT_LOCK_WAIT_TIMEOUT_MILLIS = 15*60*1000;
+  static final long INITIAL_POLL_MILLIS = 100;
+  static final long MAX_POLL_MILLIS = 5000;
+
   @Inject
   Db db;
   SchemaUpdate[] updates;
+  long lockLeaseMillis = DEFAULT_LOCK_LEASE_MILLIS;
+  long lockWaitTimeoutMillis = DEFAULT_LOCK_WAIT_TIMEOUT_MILLIS;
 
   /** constructor used when using a {@link be.tombaeyens.magicless.app.container.Container}
    * to inject the db */
@@ -61,35 +72,122 @@ public class SchemaManager {
   ////////////////////////////////////////////////////////////
 
 
+  /** The schema lock expires if the process that holds it doesn't
+   * renew it within this time, eg because it crashed during the upgrade.
+   * The lock is renewed after each update so this must be longer than the
+   * slowest {@link SchemaUpdate}. */
+  public SchemaManager lockLeaseMillis(long lockLeaseMillis) {
+    this.lockLeaseMillis = lockLeaseMillis;
+    return this;
+  }
+
+  /** max time {@link #ensureCurrentSchema()} waits for another process
+   * to upgrade the schema */
+  public SchemaManager lockWaitTimeoutMillis(long lockWaitTimeoutMillis) {
+    this.lockWaitTimeoutMillis = lockWaitTimeoutMillis;
+    return this;
+  }
+
   /** ENSURE that previously released SchemaUpdates do not change logically
    * (thay may have run, bugfixes are allowed) and that unreleased changes always are
-   * appended at the end. */
+   * appended at the end.
+   *
+   * When the schema is up to date, this takes a single query.  Otherwise one
+   * process acquires the schema lock and upgrades the schema while the others
+   * poll with increasing intervals until the schema is up to date or until
+   * the lock expired, in which case they try to take over the upgrade. */
   public void ensureCurrentSchema() {
-    if (!schemaHistoryExists()) {
-      createSchemaHistory();
-    }
-    if (!isSchemaUpToDate()) {
-      if (acquireSchemaLock()) {
-        upgradeSchema();
-        releaseSchemaLock();
-      } else {
+    SchemaState schemaState = readSchemaState();
+    long deadline = System.currentTimeMillis() + lockWaitTimeoutMillis;
+    long pollMillis = INITIAL_POLL_MILLIS;
+    while (!schemaState.isUpToDate()) {
+      if (acquireSchemaLock(schemaState)) {
         try {
-          Thread.sleep(5000);
-        } catch (InterruptedException e) {
-          log.debug("Waiting for other node to finish upgrade got interrupted");
+          upgradeSchema();
+        } finally {
+          releaseSchemaLock();
         }
+        return;
+      }
+      long remainingMillis = deadline - System.currentTimeMillis();
+      if (remainingMillis<=0) {
+        throw new RuntimeException("Timed out after "+lockWaitTimeoutMillis+"ms waiting for "+schemaState.lockProcess+" to upgrade the schema");
       }
+      log.debug("Waiting " + pollMillis + "ms for " + schemaState.lockProcess + " to upgrade the schema");
+      try {
+        Thread.sleep(Math.min(pollMillis, remainingMillis));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Waiting for other node to finish upgrade got interrupted", e);
+      }
+      pollMillis = Math.min(pollMillis*2, MAX_POLL_MILLIS);
+      schemaState = readSchemaState();
     }
   }
 
-  private boolean isSchemaUpToDate() {
-    Set<String> dbSchemaUpdates = getDbSchemaUpdates();
-    for (SchemaUpdate update: updates) {
-      if (!dbSchemaUpdates.contains(update.getId())) {
-        return false;
+  /** The applied updates and the lock of the schema history */
+  protected class SchemaState {
+    Set<String> updateIds = new HashSet<>();
+    String lockProcess;
+    LocalDateTime lockTime;
+
+    boolean isUpToDate() {
+      for (SchemaUpdate update: updates) {
+        if (!updateIds.contains(update.getId())) {
+          return false;
+        }
       }
+      return true;
+    }
+
+    boolean isLockExpired() {
+      return lockTime==null
+             || lockTime.plus(lockLeaseMillis, ChronoUnit.MILLIS).isBefore(Time.now());
     }
-    return true;
+  }
+
+  /** reads the applied updates and the lock in one query.  Creates the
+   * schema history table if it doesn't exist yet. */
+  protected SchemaState readSchemaState() {
+    SchemaState schemaState = selectSchemaState();
+    if (schemaState!=null) {
+      return schemaState;
+    }
+    try {
+      createSchemaHistory();
+    } catch (RuntimeException e) {
+      // another process may have created it concurrently
+      if (!schemaHistoryExists()) {
+        throw e;
+      }
+    }
+    return selectSchemaState();
+  }
+
+  /** @return null if the schema history table doesn't exist */
+  protected SchemaState selectSchemaState() {
+    return db.tx(tx->{
+      // checked through the metadata as a failing select would roll back the tx
+      if (!tx.tableExists(SchemaHistory.TABLE.getName())) {
+        return;
+      }
+      SchemaState schemaState = new SchemaState();
+      tx.newSelect(ID, TYPE, PROCESS, TIME)
+        .where(or(
+          equal(TYPE, TYPE_UPDATE),
+          equal(TYPE, TYPE_LOCK)))
+        .execute()
+        .stream()
+        .forEach(selectResults->{
+          if (TYPE_LOCK.equals(selectResults.get(TYPE))) {
+            schemaState.lockProcess = selectResults.get(PROCESS);
+            schemaState.lockTime = selectResults.get(TIME);
+          } else {
+            schemaState.updateIds.add(selectResults.get(ID));
+          }
+        });
+      tx.setResult(schemaState);
+    });
   }
 
   /** Skips locking of the db and assumes that a) no db has been created yet
@@ -105,14 +203,23 @@ public class SchemaManager {
     }
   }
 
-  protected boolean acquireSchemaLock() {
+  /** Acquires the lock if it's free or if its lease expired.  In the latter case
+   * the lock is only taken over if it didn't change since the schemaState was read. */
+  protected boolean acquireSchemaLock(SchemaState schemaState) {
+    if (schemaState.lockProcess!=null && !schemaState.isLockExpired()) {
+      return false;
+    }
+    if (schemaState.lockProcess!=null) {
+      log.warn("Taking over expired schema lock of " + schemaState.lockProcess + " acquired at " + schemaState.lockTime);
+    }
     return db.tx(tx->{
       int updateCount = tx.newUpdate(SchemaHistory.TABLE)
         .set(DESCRIPTION, db.getProcess() + " is upgrading schema")
         .set(PROCESS, db.getProcess())
+        .set(TIME, Time.now())
         .where(and(
-          isNull(DESCRIPTION),
-          isNull(PROCESS),
+          schemaState.lockProcess!=null ? equal(PROCESS, schemaState.lockProcess) : isNull(PROCESS),
+          schemaState.lockTime!=null ? equal(TIME, schemaState.lockTime) : isNull(TIME),
           equal(TYPE, TYPE_LOCK)))
         .execute();
       if (updateCount>1) {
@@ -127,8 +234,9 @@ public class SchemaManager {
       int updateCount = tx.newUpdate(SchemaHistory.TABLE)
         .set(DESCRIPTION, null)
         .set(PROCESS, null)
+        .set(TIME, null)
         .where(and(
-          isNull(PROCESS),
+          equal(PROCESS, db.getProcess()),
           equal(TYPE, TYPE_LOCK)))
         .execute();
       if (updateCount>1) {
@@ -155,17 +263,29 @@ public class SchemaManager {
           if (updateCount!=1) {
             throw new RuntimeException("Expected 1 insert of update "+update.getId());
           }
+          renewSchemaLock(tx);
         });
       }
     }
   }
+
+  /** extends the lease of the schema lock.  Fails if the lock expired and
+   * was taken over by another process. */
+  protected void renewSchemaLock(Tx tx) {
+    int updateCount = tx.newUpdate(SchemaHistory.TABLE)
+      .set(TIME, Time.now())
+      .where(and(
+        equal(PROCESS, db.getProcess()),
+        equal(TYPE, TYPE_LOCK)))
+      .execute();
+    if (updateCount!=1) {
+      throw new RuntimeException("Schema lock of "+db.getProcess()+" expired and was taken over by another process");
+    }
+  }
+
   protected boolean schemaHistoryExists() {
     return db.tx(tx->{
-      boolean schemaHistoryExists = tx.getTableNames().stream()
-        .map(tableName->tableName.toLowerCase())
-        .collect(Collectors.toList())
-        .contains(SchemaHistory.TABLE.getName());
-      tx.setResult(schemaHistoryExists);
+      tx.setResult(tx.tableExists(SchemaHistory.TABLE.getName()));
     });
   }
 
@@ -15,10 +15,21 @@
  */
 package be.tombaeyens.magicless.db.schema;
 
+import be.tombaeyens.magicless.db.Index;
 import be.tombaeyens.magicless.db.Tx;
 
 public interface SchemaUpdate {
 
+  /** update that creates an index on an existing table */
+  static SchemaUpdate createIndex(String id, Index index) {
+    return new IndexUpdate(id, tx->tx.newCreateIndex(index).execute());
+  }
+
+  /** update that drops an index */
+  static SchemaUpdate dropIndex(String id, Index index) {
+    return new IndexUpdate(id, tx->tx.newDropIndex(index).execute());
+  }
+
   /** Unique id that identifies this update.  The applied updateIds
    * are stored in the {@link SchemaHistory} table. */
   String getId();
@@ -44,6 +44,11 @@ public class BooleanType implements DataType {
     }
   }
 
+  @Override
+  public Object parseText(String text) {
+    return text!=null ? Boolean.valueOf(text.trim()) : null;
+  }
+
   @Override
   public boolean isRightAligned() {
     return true;
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.types;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes a {@link JsonType} value directly into the CLOB of an insert or
+ * update so that large documents don't have to be built as a String first.
+ *
+ * Usage:
+ * <pre>
+ * tx.newInsert(DOCUMENTS)
+ *   .set(DOCUMENTS.JSON, (ClobWriter) writer-&gt;gson.toJson(document, writer))
+ *   .execute();
+ * </pre> */
+@FunctionalInterface
+public interface ClobWriter {
+
+  void write(Writer writer) throws IOException;
+}
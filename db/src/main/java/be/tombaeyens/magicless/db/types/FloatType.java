@@ -45,6 +45,11 @@ public class FloatType implements DataType {
     }
   }
 
+  @Override
+  public Object parseText(String text) {
+    return text!=null ? Float.valueOf(text.trim()) : null;
+  }
+
   @Override
   public boolean isRightAligned() {
     return true;
@@ -53,7 +58,8 @@ public class FloatType implements DataType {
   @Override
   public Float getResultSetValue(int index, ResultSet resultSet) {
     try {
-      return resultSet.getFloat(index);
+      float floatValue = resultSet.getFloat(index);
+      return resultSet.wasNull() ? null : floatValue;
     } catch (SQLException e) {
       throw exceptionWithCause("get JDBC float value "+index+" from result set", e);
     }
@@ -45,6 +45,11 @@ public class IntegerType implements DataType {
     }
   }
 
+  @Override
+  public Object parseText(String text) {
+    return text!=null ? Integer.valueOf(text.trim()) : null;
+  }
+
   @Override
   public boolean isRightAligned() {
     return true;
@@ -53,7 +58,8 @@ public class IntegerType implements DataType {
   @Override
   public Integer getResultSetValue(int index, ResultSet resultSet) {
     try {
-      return resultSet.getInt(index);
+      int intValue = resultSet.getInt(index);
+      return resultSet.wasNull() ? null : intValue;
     } catch (SQLException e) {
       throw exceptionWithCause("get JDBC int value "+index+" from result set", e);
     }
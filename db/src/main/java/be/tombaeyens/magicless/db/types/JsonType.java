@@ -17,15 +17,28 @@ package be.tombaeyens.magicless.db.types;
 
 import be.tombaeyens.magicless.app.util.Io;
 import be.tombaeyens.magicless.db.DataType;
+import be.tombaeyens.magicless.db.Tx;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.Date;
 
 import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
 
+/** JSON documents stored as CLOB.
+ *
+ * Values can be set as a String, as a {@link Reader} that is streamed into
+ * the CLOB or as a {@link ClobWriter} that writes the document into the CLOB.
+ * Use {@link be.tombaeyens.magicless.db.SelectResults#read(be.tombaeyens.magicless.db.Column, ClobReader)}
+ * to parse documents from the character stream without reading them into a String. */
 public class JsonType implements DataType {
 
   @Override
@@ -39,24 +52,75 @@ public class JsonType implements DataType {
       if (value!=null) {
         if (value instanceof String) {
           statement.setClob(i, new StringReader((String) value));
+        } else if (value instanceof Reader) {
+          statement.setClob(i, (Reader) value);
+        } else if (value instanceof ClobWriter) {
+          Tx tx = Tx.getCurrentTx();
+          if (tx!=null) {
+            Clob clob = statement.getConnection().createClob();
+            // freed by the tx after the statement executed
+            tx.temporaryClob(clob);
+            try (Writer writer = clob.setCharacterStream(1)) {
+              ((ClobWriter) value).write(writer);
+            }
+            statement.setClob(i, clob);
+          } else {
+            // outside a tx, nobody would free a temporary clob
+            StringWriter writer = new StringWriter();
+            ((ClobWriter) value).write(writer);
+            statement.setClob(i, new StringReader(writer.toString()));
+          }
         } else {
           throw new RuntimeException("Unsupported data type: "+value);
         }
+      } else {
+        statement.setNull(i, Types.CLOB);
       }
 
-    } catch (SQLException e) {
+    } catch (SQLException | IOException e) {
       throw exceptionWithCause("set JDBC clob parameter value "+value, e);
     }
   }
 
   @Override
-  public String getResultSetValue(int index, ResultSet resultSet) {
+  @SuppressWarnings("unchecked")
+  public <T> T getResultSetValue(int index, ResultSet resultSet) {
     try {
       Reader reader = resultSet.getCharacterStream(index);
-      return reader!=null ? Io.getString(reader) : null;
+      return reader!=null ? (T) Io.getString(reader) : null;
     } catch (SQLException e) {
       throw exceptionWithCause("get JDBC clob result set value "+index, e);
     }
   }
 
+  /** Passes the character stream of the clob to the clobReader without reading
+   * it into a String.  The reader is closed afterwards.  Returns null without
+   * invoking the clobReader if the value is null. */
+  public <T> T read(int index, ResultSet resultSet, ClobReader<T> clobReader) {
+    try (Reader reader = resultSet.getCharacterStream(index)) {
+      return reader!=null ? clobReader.read(reader) : null;
+    } catch (SQLException | IOException e) {
+      throw exceptionWithCause("read JDBC clob result set value "+index, e);
+    }
+  }
+
+  /** the json text of a value as returned by {@link #getResultSetValue(int, ResultSet)} */
+  public String toJsonText(Object value) {
+    return (String) value;
+  }
+
+  /** the parsed json of a value as returned by {@link #getResultSetValue(int, ResultSet)} */
+  public JsonElement toJsonTree(Object value, JsonParser jsonParser) {
+    String json = toJsonText(value);
+    return json!=null ? jsonParser.parse(json) : JsonNull.INSTANCE;
+  }
+
+  @Override
+  public String toLogText(Object value) {
+    if (value instanceof Reader || value instanceof ClobWriter) {
+      return "(streamed)";
+    }
+    return DataType.super.toLogText(value);
+  }
+
 }
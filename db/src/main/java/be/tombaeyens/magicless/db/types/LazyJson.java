@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.types;
+
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
+
+/** A JSON column value that is only deserialized when it is first accessed,
+ * see {@link TypedJsonType}.  When a LazyJson that was not accessed is
+ * written back, the original JSON text is written without a round trip. */
+public class LazyJson<T> {
+
+  String json;
+  Type type;
+  Gson gson;
+  T value;
+  boolean parsed;
+
+  public LazyJson(String json, Type type, Gson gson) {
+    this.json = json;
+    this.type = type;
+    this.gson = gson;
+  }
+
+  /** deserializes the json on the first call */
+  public synchronized T get() {
+    if (!parsed) {
+      value = gson.fromJson(json, type);
+      parsed = true;
+      json = null;
+    }
+    return value;
+  }
+
+  public synchronized boolean isParsed() {
+    return parsed;
+  }
+
+  /** the json text: the original text if not yet parsed, otherwise the serialized value */
+  public synchronized String getJson() {
+    return parsed ? gson.toJson(value, type) : json;
+  }
+
+  @Override
+  public String toString() {
+    return "LazyJson(" + type.getTypeName() + ")";
+  }
+}
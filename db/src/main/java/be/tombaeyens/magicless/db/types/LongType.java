@@ -26,9 +26,22 @@ import static be.tombaeyens.magicless.app.util.Exceptions.exceptionWithCause;
 
 public class LongType implements DataType {
 
+  protected String sql;
+
+  /** Creates columns as INTEGER, as existing tables were created that way.
+   * Values beyond the 32 bit range then overflow in most databases. */
+  public LongType() {
+    this("INTEGER");
+  }
+
+  /** eg BIGINT for new columns that need the full long range */
+  public LongType(String sql) {
+    this.sql = sql;
+  }
+
   @Override
   public String getDefaultSql() {
-    return "INTEGER";
+    return sql;
   }
 
   @Override
@@ -38,13 +51,18 @@ public class LongType implements DataType {
         long longValue = value!=null ? ((Number) value).longValue() : null;
         statement.setLong(i, longValue);
       } else {
-        statement.setNull(i, Types.INTEGER);
+        statement.setNull(i, Types.BIGINT);
       }
     } catch (SQLException e) {
       throw exceptionWithCause("set JDBC long parameter value "+value, e);
     }
   }
 
+  @Override
+  public Object parseText(String text) {
+    return text!=null ? Long.valueOf(text.trim()) : null;
+  }
+
   @Override
   public boolean isRightAligned() {
     return true;
@@ -53,7 +71,8 @@ public class LongType implements DataType {
   @Override
   public Long getResultSetValue(int index, ResultSet resultSet) {
     try {
-      return resultSet.getLong(index);
+      long longValue = resultSet.getLong(index);
+      return resultSet.wasNull() ? null : longValue;
     } catch (SQLException e) {
       throw exceptionWithCause("get JDBC long value "+index+" from result set", e);
     }
@@ -21,6 +21,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
 import java.util.Date;
 
@@ -49,6 +50,8 @@ public class TimestampType implements DataType {
           throw new RuntimeException("Unsupported data type: "+value);
         }
         statement.setTimestamp(i, timestamp);
+      } else {
+        statement.setNull(i, Types.TIMESTAMP);
       }
 
     } catch (SQLException e) {
@@ -66,4 +69,10 @@ public class TimestampType implements DataType {
     }
   }
 
+  /** parses ISO local date times like 2018-03-25T14:30:00, also with a space instead of the T */
+  @Override
+  public Object parseText(String text) {
+    return text!=null ? LocalDateTime.parse(text.trim().replace(' ', 'T')) : null;
+  }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless.db.types;
+
+import be.tombaeyens.magicless.app.util.Io;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/** JSON column that maps to objects of a given type with a Gson, which can
+ * be configured with eg a PolymorphicTypeAdapterFactory.
+ *
+ * Objects are serialized with a {@link JsonWriter} straight into the CLOB
+ * and deserialized with a {@link JsonReader} straight from the result set
+ * character stream, without an intermediate String.
+ *
+ * When lazy, the select results contain {@link LazyJson} values that keep the
+ * JSON text and only deserialize when {@link LazyJson#get()} is called.
+ *
+ * Use {@link be.tombaeyens.magicless.db.Column#typeJson(Type, Gson)} */
+public class TypedJsonType extends JsonType {
+
+  protected Type type;
+  protected Gson gson;
+  protected boolean lazy;
+
+  public TypedJsonType(Type type, Gson gson, boolean lazy) {
+    this.type = type;
+    this.gson = gson;
+    this.lazy = lazy;
+  }
+
+  @Override
+  public void setParameter(PreparedStatement statement, int i, Object value) {
+    if (value==null
+        || value instanceof String
+        || value instanceof Reader
+        || value instanceof ClobWriter) {
+      super.setParameter(statement, i, value);
+    } else if (value instanceof LazyJson) {
+      super.setParameter(statement, i, ((LazyJson<?>) value).getJson());
+    } else {
+      super.setParameter(statement, i, (ClobWriter) writer->{
+        // not closed as that would close the clob writer
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        gson.toJson(value, type, jsonWriter);
+        jsonWriter.flush();
+      });
+    }
+  }
+
+  @Override
+  public <T> T getResultSetValue(int index, ResultSet resultSet) {
+    return read(index, resultSet, this::readValue);
+  }
+
+  /** Rows read into memory keep the json text as deserialized objects
+   * are mutable and cached rows are shared between transactions. */
+  @Override
+  public Object getRowValue(int index, ResultSet resultSet) {
+    return super.getResultSetValue(index, resultSet);
+  }
+
+  /** deserializes a fresh instance from the json text kept in the row */
+  @Override
+  public <T> T fromRowValue(Object rowValue) {
+    return rowValue!=null ? readValue(new StringReader((String) rowValue)) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected <T> T readValue(Reader reader) {
+    if (lazy) {
+      return (T) new LazyJson<>(Io.getString(reader), type, gson);
+    }
+    return gson.fromJson(new JsonReader(reader), type);
+  }
+
+  @Override
+  public String toJsonText(Object value) {
+    if (value instanceof LazyJson) {
+      return ((LazyJson<?>) value).getJson();
+    } else if (value==null || value instanceof String) {
+      return (String) value;
+    }
+    return gson.toJson(value, type);
+  }
+
+  @Override
+  public JsonElement toJsonTree(Object value, JsonParser jsonParser) {
+    if (value instanceof LazyJson || value instanceof String) {
+      return super.toJsonTree(value, jsonParser);
+    }
+    return gson.toJsonTree(value, type);
+  }
+
+  @Override
+  public String toLogText(Object value) {
+    if (value!=null && !(value instanceof String)) {
+      return "(" + value.getClass().getSimpleName() + ")";
+    }
+    return super.toLogText(value);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Gson getGson() {
+    return gson;
+  }
+
+  public boolean isLazy() {
+    return lazy;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.BatchInsert;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.dialects.H2Dialect;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BatchInsertTest {
+
+  @Test
+  public void testBatchInsert() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:batchinsert"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    int[] updateCounts = db.tx(tx->{
+      tx.setResult(tx.newBatchInsert(Users.TABLE)
+        .batchSize(10)
+        .execute(IntStream.range(0, 25)
+            .mapToObj(i->new User().id("u"+i).email("u"+i+"@example.com")),
+          (batchInsert, user)->batchInsert
+            .set(Users.ID, user.getId())
+            .set(Users.EMAIL, user.getEmail())));
+    });
+    assertArrayEquals(new int[]{10, 10, 5}, updateCounts);
+
+    db.tx(tx->{
+      tx.newBatchInsert(Users.TABLE)
+        .columns(Users.ID, Users.FIRST_NAME)
+        .row()
+          .set(Users.ID, "a")
+          .set(Users.FIRST_NAME, "A")
+        .row()
+          .set(Users.ID, "b")
+        .execute();
+    });
+
+    // 4 columns per row and 10 rows per batch
+    updateCounts = db.tx(tx->{
+      tx.setResult(tx.newBatchInsert(Users.TABLE)
+        .multiRowValues()
+        .batchSize(10)
+        .execute(IntStream.range(100, 123)
+            .mapToObj(i->new User().id("u"+i).lastName("Last"+i)),
+          (batchInsert, user)->batchInsert
+            .set(Users.ID, user.getId())
+            .set(Users.LAST_NAME, user.getLastName())));
+    });
+    assertArrayEquals(new int[]{10, 10, 3}, updateCounts);
+
+    long userCount = db.tx(tx->{
+      tx.setResult(Users.findAllUsers(tx).count());
+    });
+    assertThat(userCount, is(50L));
+  }
+
+  /** replaces the update counts of the driver to simulate other drivers */
+  static BatchInsert withUpdateCounts(Tx tx, int... rowUpdateCounts) {
+    return new BatchInsert(tx, Users.TABLE) {
+      @Override
+      protected void executeBatch(String sql, PreparedStatement statement, int batchRowCount) throws SQLException {
+        PreparedStatement countsStatement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{PreparedStatement.class},
+          (proxy, method, args)->{
+            try {
+              Object result = method.invoke(statement, args);
+              return method.getName().equals("executeBatch") ? rowUpdateCounts : result;
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          });
+        super.executeBatch(sql, countsStatement, batchRowCount);
+      }
+    };
+  }
+
+  @Test
+  public void testDriverUpdateCounts() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:batchinsertcounts"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    int[] updateCounts = db.tx(tx->tx.setResult(withUpdateCounts(tx, Statement.SUCCESS_NO_INFO, 1)
+      .row().set(Users.ID, "u1")
+      .row().set(Users.ID, "u2")
+      .execute()));
+    assertArrayEquals(new int[]{2}, updateCounts);
+
+    try {
+      db.tx(tx->withUpdateCounts(tx, 1, Statement.EXECUTE_FAILED)
+        .row().set(Users.ID, "u3")
+        .row().set(Users.ID, "u4")
+        .execute());
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getCause(), instanceOf(BatchUpdateException.class));
+    }
+    assertThat(db.<Long>tx(tx->tx.setResult(Users.findAllUsers(tx).count())), is(2L));
+  }
+
+  @Test
+  public void testMultiRowValuesAreSplitByTheParameterLimit() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:batchinsertparameters")
+      .dbDialect(new H2Dialect() {
+        @Override
+        public int getMaxParametersPerStatement() {
+          return 10;
+        }
+      }));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    // 4 columns per row so at most 2 rows per statement, below the batch size
+    int[] updateCounts = db.tx(tx->tx.setResult(tx.newBatchInsert(Users.TABLE)
+      .multiRowValues()
+      .batchSize(100)
+      .execute(IntStream.range(0, 5)
+          .mapToObj(i->new User().id("u"+i).email("u"+i+"@example.com")),
+        (batchInsert, user)->batchInsert
+          .set(Users.ID, user.getId())
+          .set(Users.EMAIL, user.getEmail()))));
+    assertArrayEquals(new int[]{2, 2, 1}, updateCounts);
+
+    List<String> emails = db.tx(tx->tx.setResult(Users.findAllUsers(tx)
+      .map(User::getEmail)
+      .sorted()
+      .collect(Collectors.toList())));
+    assertThat(emails.toString(), is("[u0@example.com, u1@example.com, u2@example.com, u3@example.com, u4@example.com]"));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.bulk.BulkFormat;
+import be.tombaeyens.magicless.db.bulk.BulkImport;
+import be.tombaeyens.magicless.db.bulk.BulkReport;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BulkTest {
+
+  static Db createDb(String name) {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:"+name));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    return db;
+  }
+
+  static User findUser(Db db, String id) {
+    return db.tx(tx->tx.setResult(Users.findAllUsers(tx)
+      .filter(user->id.equals(user.getId()))
+      .findFirst()
+      .orElse(null)));
+  }
+
+  @Test
+  public void testCsvImportExport() {
+    Db db = createDb("bulkcsv");
+    StringBuilder csv = new StringBuilder("id,firstName,lastName,email\r\n");
+    csv.append("special,\"Doe, \"\"Jr\"\"\",\"\",\r\n");
+    for (int i=0; i<2500; i++) {
+      csv.append("u"+i+",First"+i+",Last"+i+",u"+i+"@example.com\n");
+    }
+    BulkReport report = db.newBulkImport(Users.TABLE)
+      .format(BulkFormat.CSV)
+      .chunkSize(100)
+      .commitEvery(1000)
+      .parallelism(4)
+      .execute(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+    assertThat(report.getRows(), is(2501L));
+
+    User special = findUser(db, "special");
+    assertThat(special.getFirstName(), is("Doe, \"Jr\""));
+    assertThat(special.getLastName(), is(""));
+    assertThat(special.getEmail(), is(nullValue()));
+    assertThat(findUser(db, "u2499").getEmail(), is("u2499@example.com"));
+
+    ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    db.tx(tx->tx.newSelect(Users.TABLE)
+      .where(equal(Users.ID, "special"))
+      .export(BulkFormat.CSV, exported));
+    assertThat(new String(exported.toByteArray(), StandardCharsets.UTF_8),
+      is("id,firstName,lastName,email\r\nspecial,\"Doe, \"\"Jr\"\"\",\"\",\r\n"));
+  }
+
+  @Test
+  public void testNdjsonRoundTrip() {
+    Db source = createDb("bulkndjsonsource");
+    source.tx(tx->{
+      Users.insertUser(tx, new User().id("u1").firstName("John").email("john@example.com"));
+      Users.insertUser(tx, new User().id("u2").firstName("Line\nbreak"));
+    });
+    ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    BulkReport exportReport = source.tx(tx->tx.setResult(tx.newSelect(Users.TABLE).export(BulkFormat.NDJSON, exported)));
+    assertThat(exportReport.getRows(), is(2L));
+
+    Db target = createDb("bulkndjsontarget");
+    BulkReport importReport = target.newBulkImport(Users.TABLE)
+      .format(BulkFormat.NDJSON)
+      .parallelism(1)
+      .execute(new ByteArrayInputStream(exported.toByteArray()));
+    assertThat(importReport.getRows(), is(2L));
+    assertThat(findUser(target, "u1").getEmail(), is("john@example.com"));
+    assertThat(findUser(target, "u2").getFirstName(), is("Line\nbreak"));
+    assertThat(findUser(target, "u2").getEmail(), is(nullValue()));
+  }
+
+  @Test
+  public void testExactCommitEveryAndCaseInsensitiveNdjsonKeys() {
+    Db db = createDb("bulkcommitevery");
+    StringBuilder ndjson = new StringBuilder();
+    for (int i=0; i<25; i++) {
+      ndjson.append("{\"ID\":\"u"+i+"\",\"FirstName\":\"First"+i+"\"}\n");
+    }
+    List<Integer> transactionSizes = new ArrayList<>();
+    BulkReport report = new BulkImport(db, Users.TABLE) {
+        @Override
+        protected int insert(List<Column> columns, List<Object[]> rows) {
+          if (!rows.isEmpty()) {
+            transactionSizes.add(rows.size());
+          }
+          return super.insert(columns, rows);
+        }
+      }
+      .format(BulkFormat.NDJSON)
+      .commitEvery(10)
+      .chunkSize(7)
+      .parallelism(1)
+      .execute(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+    assertThat(report.getRows(), is(25L));
+    assertThat(transactionSizes.toString(), is("[10, 10, 5]"));
+    assertThat(findUser(db, "u7").getFirstName(), is("First7"));
+  }
+}
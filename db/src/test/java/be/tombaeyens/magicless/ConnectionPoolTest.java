@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.app.util.Configuration;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.pool.ConnectionPool;
+import be.tombaeyens.magicless.db.pool.ConnectionPoolStats;
+import be.tombaeyens.magicless.db.pool.DelegatingConnection;
+import be.tombaeyens.magicless.db.pool.SimpleConnectionPool;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ConnectionPoolTest {
+
+  @Test
+  public void testSimpleConnectionPool() {
+    Db db = new Db(new DbConfiguration("db", new Configuration()
+      .put("db.url", "jdbc:h2:mem:simplepool")
+      .put("db.connectionpool", DbConfiguration.CONNECTION_POOL_SIMPLE)
+      .put("db.maxpoolsize", "2")));
+    assertThat(db.getConnectionPool(), instanceOf(SimpleConnectionPool.class));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    db.tx(tx->Users.insertUser(tx, new User().id("u1")));
+    assertThat(db.<Long>tx(tx->tx.setResult(Users.findAllUsers(tx).count())), is(1L));
+
+    ConnectionPoolStats stats = db.getConnectionPoolStats();
+    assertThat(stats.getActive(), is(0));
+    assertThat(stats.getIdle(), is(1));
+    db.close();
+  }
+
+  @Test
+  public void testAcquireTimeout() throws Exception {
+    ConnectionPool connectionPool = new SimpleConnectionPool(new DbConfiguration()
+      .url("jdbc:h2:mem:pooltimeout")
+      .maxPoolSize(1)
+      .acquireTimeoutMillis(50));
+    try (Connection connection = connectionPool.getConnection()) {
+      assertThat(connection.isClosed(), is(false));
+      assertThat(connectionPool.getStats().getActive(), is(1));
+      try {
+        connectionPool.getConnection();
+        fail("expected timeout");
+      } catch (SQLTimeoutException e) {
+        // expected
+      }
+    }
+    // the closed connection is returned to the pool
+    try (Connection connection = connectionPool.getConnection()) {
+      assertThat(connection.isClosed(), is(false));
+      assertThat(connectionPool.getStats().getIdle(), is(0));
+    }
+    assertThat(connectionPool.getStats().getAcquires(), is(2L));
+    connectionPool.close();
+  }
+
+  @Test
+  public void testIdleConnectionsAreEvictedWithoutActivity() throws Exception {
+    ConnectionPool connectionPool = new SimpleConnectionPool(new DbConfiguration()
+      .url("jdbc:h2:mem:poolidle")
+      .minPoolSize(0)
+      .maxIdleTimeMillis(50));
+    Connection first = connectionPool.getConnection();
+    Connection second = connectionPool.getConnection();
+    first.close();
+    second.close();
+    assertThat(connectionPool.getStats().getIdle(), is(2));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (connectionPool.getStats().getIdle()>0 && System.currentTimeMillis()<deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(connectionPool.getStats().getIdle(), is(0));
+    connectionPool.close();
+  }
+
+  @Test
+  public void testZeroMaxIdleTimeKeepsIdleConnections() throws Exception {
+    ConnectionPool connectionPool = new SimpleConnectionPool(new DbConfiguration()
+      .url("jdbc:h2:mem:poolnoidle")
+      .minPoolSize(0)
+      .maxIdleTimeMillis(0));
+    Connection connection = connectionPool.getConnection();
+    // the toString of the pooled connection includes the physical connection
+    String physicalConnection = connection.toString();
+    connection.close();
+    Thread.sleep(50);
+    connection = connectionPool.getConnection();
+    assertThat(connection.toString(), is(physicalConnection));
+    connection.close();
+    assertThat(connectionPool.getStats().getIdle(), is(1));
+    connectionPool.close();
+  }
+
+  @Test
+  public void testMinPoolSizeIsOpenedUpFront() throws Exception {
+    ConnectionPool connectionPool = new SimpleConnectionPool(new DbConfiguration()
+      .url("jdbc:h2:mem:poolmin")
+      .minPoolSize(3)
+      .maxPoolSize(5));
+    assertThat(connectionPool.getStats().getIdle(), is(3));
+    Connection connection = connectionPool.getConnection();
+    assertThat(connectionPool.getStats().getIdle(), is(2));
+    assertThat(connection.isWrapperFor(DelegatingConnection.class), is(true));
+    connection.close();
+    assertThat(connection.isClosed(), is(true));
+    try {
+      connection.createStatement();
+      fail("expected exception");
+    } catch (SQLException e) {
+      assertThat(e.getMessage(), is("Connection is closed"));
+    }
+    assertThat(connectionPool.getStats().getIdle(), is(3));
+    connectionPool.close();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.impl.CacheStats;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.sql.Connection;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class EntityCacheTest {
+
+  static String findFirstName(Tx tx, String id) {
+    return tx.newSelect(Users.TABLE)
+      .where(equal(Users.ID, id))
+      .execute()
+      .stream()
+      .map(selectResults->selectResults.get(Users.FIRST_NAME))
+      .map(String.class::cast)
+      .findFirst()
+      .orElse(null);
+  }
+
+  @Test
+  public void testEntitiesAreCachedByPrimaryKey() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:entitycache"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.enableEntityCache(Users.TABLE, 100);
+    CacheStats stats = db.getEntityCache(Users.TABLE).getStats();
+
+    db.tx(tx->Users.insertUser(tx, new User().id("u1").firstName("John")));
+
+    assertThat(db.<String>tx(tx->tx.setResult(findFirstName(tx, "u1"))), is("John"));
+    assertThat(db.<String>tx(tx->tx.setResult(findFirstName(tx, "u1"))), is("John"));
+    assertThat(stats.getMisses(), is(1L));
+    assertThat(stats.getHits(), is(1L));
+
+    db.tx(tx->{
+      tx.newUpdate(Users.TABLE)
+        .set(Users.FIRST_NAME, "Joe")
+        .where(equal(Users.ID, "u1"))
+        .execute();
+      // the transaction that wrote to the table must see its own writes
+      assertThat(findFirstName(tx, "u1"), is("Joe"));
+    });
+    assertThat(stats.getHits(), is(1L));
+
+    // the commit removed the row from the cache
+    assertThat(db.<String>tx(tx->tx.setResult(findFirstName(tx, "u1"))), is("Joe"));
+    assertThat(stats.getMisses(), is(2L));
+
+    db.tx(tx->tx.newDelete(Users.TABLE).execute());
+    assertThat(db.getEntityCache(Users.TABLE).size(), is(0));
+    assertThat(db.<String>tx(tx->tx.setResult(findFirstName(tx, "u1"))), is(nullValue()));
+  }
+
+  @Test
+  public void testSnapshotReadsAreNotCached() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:entitycachesnapshot"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.enableEntityCache(Users.TABLE, 100);
+    db.tx(tx->Users.insertUser(tx, new User().id("u1").firstName("John")));
+
+    // the snapshot of a repeatable read tx may predate the last invalidation
+    assertThat(db.<String>tx(tx->tx
+      .isolation(Connection.TRANSACTION_REPEATABLE_READ)
+      .setResult(findFirstName(tx, "u1"))), is("John"));
+    assertThat(db.getEntityCache(Users.TABLE).size(), is(0));
+
+    assertThat(db.<String>tx(tx->tx.setResult(findFirstName(tx, "u1"))), is("John"));
+    assertThat(db.getEntityCache(Users.TABLE).size(), is(1));
+  }
+
+  static class Counters extends Table {
+    static final Column ID = new Column().name("id").typeLong().primaryKey();
+    static final Column NAME = new Column().name("name").typeVarchar(255);
+    static final Counters TABLE = new Counters();
+    private Counters() {
+      name("counters");
+      column(ID);
+      column(NAME);
+    }
+  }
+
+  static String findCounterName(Tx tx, Object id) {
+    return tx.newSelect(Counters.TABLE)
+      .where(equal(Counters.ID, id))
+      .execute()
+      .stream()
+      .map(selectResults->(String) selectResults.get(Counters.NAME))
+      .findFirst()
+      .orElse(null);
+  }
+
+  @Test
+  public void testIntegerAndLongKeysShareTheCacheEntry() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:entitycachekeys"));
+    db.tx(tx->tx.newCreateTable(Counters.TABLE).execute());
+    db.enableEntityCache(Counters.TABLE, 100);
+    CacheStats stats = db.getEntityCache(Counters.TABLE).getStats();
+    db.tx(tx->tx.newInsert(Counters.TABLE)
+      .set(Counters.ID, 1L)
+      .set(Counters.NAME, "visits")
+      .execute());
+
+    assertThat(db.<String>tx(tx->tx.setResult(findCounterName(tx, 1L))), is("visits"));
+    assertThat(db.<String>tx(tx->tx.setResult(findCounterName(tx, 1))), is("visits"));
+    assertThat(stats.getMisses(), is(1L));
+    assertThat(stats.getHits(), is(1L));
+
+    // an update by Integer key invalidates the entry cached by Long key
+    db.tx(tx->tx.newUpdate(Counters.TABLE)
+      .set(Counters.NAME, "views")
+      .where(equal(Counters.ID, 1))
+      .execute());
+    assertThat(db.<String>tx(tx->tx.setResult(findCounterName(tx, 1L))), is("views"));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.id.TimeOrderedIdGenerator;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdGeneratorTest {
+
+  @Test
+  public void testIdsAreTimeOrdered() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:idgenerator")
+      .nodeId(1023));
+    TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(db);
+    assertThat(idGenerator.getNodeId(), is(1023));
+
+    long before = System.currentTimeMillis();
+    long previous = idGenerator.generateLongId();
+    String previousText = TimeOrderedIdGenerator.toString(previous);
+    for (int i=0; i<100000; i++) {
+      long id = idGenerator.generateLongId();
+      String text = TimeOrderedIdGenerator.toString(id);
+      assertTrue(id > previous);
+      assertTrue(text.compareTo(previousText) > 0);
+      assertThat(TimeOrderedIdGenerator.parse(text), is(id));
+      previous = id;
+      previousText = text;
+    }
+    assertTrue(TimeOrderedIdGenerator.getTimeMillis(previous) >= before);
+    assertThat(idGenerator.generateId("usr"), startsWith("usr"));
+  }
+
+  @Test
+  public void testConcurrentIdsAreUnique() throws Exception {
+    TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(7);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int t=0; t<4; t++) {
+      executor.execute(()->{
+        for (int i=0; i<50000; i++) {
+          ids.add(idGenerator.generateLongId());
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertThat(ids.size(), is(200000));
+  }
+
+  @Test
+  public void testClockRegression() {
+    long[] clock = {System.currentTimeMillis()};
+    TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator(1) {
+      @Override
+      protected long currentTimeMillis() {
+        return clock[0];
+      }
+    };
+    long id = idGenerator.generateLongId();
+    clock[0] -= 5000;
+    long afterRegression = idGenerator.generateLongId();
+    assertTrue(afterRegression > id);
+    assertThat(TimeOrderedIdGenerator.getTimeMillis(afterRegression), is(TimeOrderedIdGenerator.getTimeMillis(id)));
+    clock[0] += 10000;
+    assertThat(TimeOrderedIdGenerator.getTimeMillis(idGenerator.generateLongId()), is(clock[0]));
+  }
+
+  @Test
+  public void testNodeIdMustBeConfigured() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:idgeneratornonodeid"));
+    try {
+      new TimeOrderedIdGenerator(db);
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("No node id configured"));
+    }
+    try {
+      new TimeOrderedIdGenerator(TimeOrderedIdGenerator.MAX_NODE_ID+1);
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("Node id must be between 0 and 1023"));
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Index;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.dialects.H2Dialect;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.db.schema.SchemaUpdate;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class IndexTest {
+
+  static class Orders extends Table {
+    static final Column ID = new Column().name("id").typeVarchar(255).primaryKey();
+    static final Column REFERENCE = new Column().name("reference").typeVarchar(255);
+    static final Column CUSTOMER = new Column().name("customer").typeVarchar(255);
+    static final Column CREATED = new Column().name("created").typeTimestamp();
+    static final Column TOTAL = new Column().name("total").typeDouble();
+    static final Index CUSTOMER_CREATED = new Index().columns(CUSTOMER, CREATED).include(TOTAL);
+    static final Index TOTAL_INDEX = new Index().name("orders_total").column(TOTAL);
+    static final Orders TABLE = new Orders();
+    private Orders() {
+      name("orders");
+      column(ID);
+      column(REFERENCE);
+      column(CUSTOMER);
+      column(CREATED);
+      column(TOTAL);
+      index(new Index().name("orders_reference").column(REFERENCE).unique());
+      index(CUSTOMER_CREATED);
+    }
+  }
+
+  static Set<String> indexNames(Db db) {
+    return db.tx(tx->{
+      Set<String> indexNames = new TreeSet<>();
+      try (ResultSet resultSet = tx.getConnection().getMetaData().getIndexInfo(null, null, "ORDERS", false, false)) {
+        while (resultSet.next()) {
+          String indexName = resultSet.getString("INDEX_NAME").toLowerCase();
+          if (!indexName.startsWith("primary_key")) {
+            indexNames.add(indexName);
+          }
+        }
+      }
+      tx.setResult(indexNames);
+    });
+  }
+
+  @Test
+  public void testIndexSql() {
+    assertThat(H2Dialect.INSTANCE.buildCreateIndexSql(Orders.CUSTOMER_CREATED),
+      is("CREATE INDEX orders_customer_created_idx ON orders (customer, created, total);"));
+    assertThat(H2Dialect.INSTANCE.buildDropIndexSql(Orders.CUSTOMER_CREATED),
+      is("DROP INDEX orders_customer_created_idx;"));
+
+    Index uniqueWithInclude = new Index().name("orders_reference_total").column(Orders.REFERENCE).include(Orders.TOTAL).unique();
+    try {
+      H2Dialect.INSTANCE.buildCreateIndexSql(uniqueWithInclude);
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("Unique index orders_reference_total can't include columns total"));
+    }
+  }
+
+  @Test
+  public void testIndexesInSchemaUpdates() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:indexes"));
+    new SchemaManager(db, new SchemaUpdate() {
+      @Override
+      public String getId() {
+        return "create-orders-table";
+      }
+      @Override
+      public void update(Tx tx) {
+        tx.newCreateTable(Orders.TABLE).execute();
+      }
+    }).ensureCurrentSchema();
+    assertThat(indexNames(db).toString(), is("[orders_customer_created_idx, orders_reference]"));
+
+    db.tx(tx->tx.newInsert(Orders.TABLE)
+      .set(Orders.ID, "1")
+      .set(Orders.REFERENCE, "ref")
+      .execute());
+    try {
+      db.tx(tx->tx.newInsert(Orders.TABLE)
+        .set(Orders.ID, "2")
+        .set(Orders.REFERENCE, "ref")
+        .execute());
+      fail("expected unique index violation");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage().toLowerCase(), containsString("orders_reference"));
+    }
+
+    new SchemaManager(db,
+      SchemaUpdate.createIndex("create-orders-total-index", Orders.TOTAL_INDEX)
+    ).ensureCurrentSchema();
+    assertThat(indexNames(db).toString(), is("[orders_customer_created_idx, orders_reference, orders_total]"));
+
+    new SchemaManager(db,
+      SchemaUpdate.createIndex("create-orders-total-index", Orders.TOTAL_INDEX),
+      SchemaUpdate.dropIndex("drop-orders-total-index", Orders.TOTAL_INDEX)
+    ).ensureCurrentSchema();
+    assertThat(indexNames(db).toString(), is("[orders_customer_created_idx, orders_reference]"));
+  }
+}
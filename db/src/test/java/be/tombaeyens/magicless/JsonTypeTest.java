@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.types.ClobWriter;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class JsonTypeTest {
+
+  static class Documents extends Table {
+    static final Column ID = new Column().name("id").typeVarchar(255).primaryKey();
+    static final Column JSON = new Column().name("json").typeJson();
+    static final Documents TABLE = new Documents();
+    private Documents() {
+      name("documents");
+      column(ID);
+      column(JSON);
+    }
+  }
+
+  static Object readName(Db db, String id) {
+    Gson gson = new Gson();
+    return db.tx(tx->tx.setResult(tx.newSelect(Documents.TABLE)
+      .where(equal(Documents.ID, id))
+      .execute()
+      .stream()
+      .map(selectResults->selectResults.read(Documents.JSON, reader->{
+        Map<?,?> document = gson.fromJson(new JsonReader(reader), Map.class);
+        return document.get("name");
+      }))
+      .collect(Collectors.toList())
+      .get(0)));
+  }
+
+  @Test
+  public void testStreamingJsonReadsAndWrites() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:jsontype"));
+    db.tx(tx->tx.newCreateTable(Documents.TABLE).execute());
+    Gson gson = new Gson();
+
+    db.tx(tx->{
+      tx.newInsert(Documents.TABLE)
+        .set(Documents.ID, "string")
+        .set(Documents.JSON, "{\"name\":\"from string\"}")
+        .execute();
+      tx.newInsert(Documents.TABLE)
+        .set(Documents.ID, "reader")
+        .set(Documents.JSON, new StringReader("{\"name\":\"from reader\"}"))
+        .execute();
+      tx.newInsert(Documents.TABLE)
+        .set(Documents.ID, "writer")
+        .set(Documents.JSON, (ClobWriter) writer->gson.toJson(new Document("from writer"), writer))
+        .execute();
+      tx.newInsert(Documents.TABLE)
+        .set(Documents.ID, "null")
+        .set(Documents.JSON, null)
+        .execute();
+    });
+
+    assertThat(readName(db, "string"), is("from string"));
+    assertThat(readName(db, "reader"), is("from reader"));
+    assertThat(readName(db, "writer"), is("from writer"));
+    assertThat(readName(db, "null"), is(nullValue()));
+  }
+
+  @Test
+  public void testTemporaryClobsAreFreedAfterExecute() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:jsontypeclobs"));
+    db.tx(tx->{
+      tx.newCreateTable(Documents.TABLE).execute();
+      Clob clob = tx.getConnection().createClob();
+      clob.setString(1, "{}");
+      tx.temporaryClob(clob);
+      tx.newInsert(Documents.TABLE)
+        .set(Documents.ID, "freed")
+        .set(Documents.JSON, (ClobWriter) writer->writer.write("{}"))
+        .execute();
+      try {
+        clob.length();
+        fail("expected the clob to be freed after the insert");
+      } catch (SQLException e) {
+        // expected
+      }
+    });
+  }
+
+  static class Document {
+    String name;
+    Document(String name) {
+      this.name = name;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Select;
+import be.tombaeyens.magicless.db.SelectResults;
+import be.tombaeyens.magicless.db.mapping.Mapping;
+import be.tombaeyens.magicless.db.mapping.RowMapper;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.function.Function;
+
+/** Compares the compiled {@link Mapping} with the hand written
+ * {@link Users#createUser(SelectResults)} and with plain reflection.
+ *
+ * Not a unit test: run the main method from the IDE.  The rows are
+ * materialized once and every iteration maps them outside a transaction,
+ * so that only the mapping is measured and not the select. */
+public class MappingBenchmark {
+
+  static final int ROWS = 1000;
+  static final int WARMUP_ITERATIONS = 20000;
+  static final int ITERATIONS = 50000;
+
+  /** the approach before {@link Mapping}: fields resolved once, set with reflection per value */
+  static Function<SelectResults,User> reflectionMapper() {
+    try {
+      Column[] columns = Users.TABLE.getColumns().values().toArray(new Column[0]);
+      Field[] fields = new Field[columns.length];
+      for (int i=0; i<columns.length; i++) {
+        fields[i] = User.class.getDeclaredField(columns[i].getName());
+        fields[i].setAccessible(true);
+      }
+      return selectResults->{
+        User user = new User();
+        for (int i=0; i<columns.length; i++) {
+          try {
+            fields[i].set(user, selectResults.get(columns[i]));
+          } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return user;
+      };
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static long mapAll(Select select, List<Object[]> rows, Function<SelectResults,User> mapper, int iterations) {
+    long mapped = 0;
+    for (int i=0; i<iterations; i++) {
+      List<User> users = new SelectResults(select, rows, "benchmark").getAll(mapper);
+      mapped += users.size();
+    }
+    return mapped;
+  }
+
+  static void measure(Select select, List<Object[]> rows, String name, Function<SelectResults,User> mapper) {
+    mapAll(select, rows, mapper, WARMUP_ITERATIONS);
+    long start = System.nanoTime();
+    long mapped = mapAll(select, rows, mapper, ITERATIONS);
+    long nanos = System.nanoTime() - start;
+    System.out.println(String.format("%-12s %8.1f ns/row", name, (double) nanos / mapped));
+  }
+
+  public static void main(String[] args) {
+    // debug logging of the select results would dominate the measurements
+    System.setProperty("org.slf4j.simpleLogger.log.be.tombaeyens", "info");
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:mappingbenchmark"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    Select select = db.tx(tx->{
+      for (int i=0; i<ROWS; i++) {
+        tx.newInsert(Users.TABLE)
+          .set(Users.ID, "u"+i)
+          .set(Users.FIRST_NAME, "First"+i)
+          .set(Users.LAST_NAME, "Last"+i)
+          .set(Users.EMAIL, "u"+i+"@example.com")
+          .execute();
+      }
+      tx.setResult(tx.newSelect(Users.TABLE));
+    });
+    List<Object[]> rows = db.tx(tx->tx.setResult(tx.newSelect(Users.TABLE)
+      .execute()
+      .getAll(selectResults->Users.TABLE.getColumns().values().stream()
+        .map(selectResults::get)
+        .toArray())));
+
+    RowMapper<User> compiledMapper = new Mapping<>(User.class, User::new)
+      .columns(Users.TABLE)
+      .getRowMapper();
+    Function<SelectResults,User> reflectionMapper = reflectionMapper();
+    // alternate to even out JIT and GC effects
+    for (int round=0; round<3; round++) {
+      measure(select, rows, "hand written", Users::createUser);
+      measure(select, rows, "compiled", compiledMapper);
+      measure(select, rows, "reflection", reflectionMapper);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.mapping.Mapping;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MappingTest {
+
+  static final Mapping<User> USER_MAPPING = new Mapping<>(User.class, User::new)
+    .columns(Users.TABLE);
+
+  static class Accounts extends Table {
+    static final Column ID = new Column().name("id").typeVarchar(255).primaryKey();
+    static final Column BALANCE = new Column().name("balance").typeLong();
+    static final Accounts TABLE = new Accounts();
+    private Accounts() {
+      name("accounts");
+      column(ID);
+      column(BALANCE);
+    }
+  }
+
+  public static class Account {
+    String id;
+    long balance;
+    public void setId(String id) {
+      this.id = id;
+    }
+    public void setBalance(String balance) {
+      throw new RuntimeException("the overloaded String setter must not be used");
+    }
+    public void setBalance(long balance) {
+      this.balance = balance;
+    }
+    public void setBalance(Object balance) {
+      throw new RuntimeException("the overloaded Object setter must not be used");
+    }
+  }
+
+  @Test
+  public void testOverloadedSettersMatchThePropertyType() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:mappingoverloads"));
+    Mapping<Account> accountMapping = new Mapping<>(Account.class, Account::new)
+      .columns(Accounts.TABLE);
+    db.tx(tx->{
+      tx.newCreateTable(Accounts.TABLE).execute();
+      tx.newInsert(Accounts.TABLE)
+        .set(Accounts.ID, "a")
+        .set(Accounts.BALANCE, 42L)
+        .execute();
+    });
+    Account account = db.tx(tx->tx.setResult(tx.newSelect(Accounts.TABLE)
+      .execute()
+      .getAll(accountMapping.getRowMapper())
+      .get(0)));
+    assertThat(account.balance, is(42L));
+  }
+
+  @Test
+  public void testMapping() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:mapping"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    List<User> users = IntStream.range(0, 10)
+      .mapToObj(i->new User()
+        .id("u"+i)
+        .firstName("First"+i)
+        .email(i%2==0 ? "u"+i+"@example.com" : null))
+      .collect(Collectors.toList());
+
+    db.tx(tx->{
+      USER_MAPPING.getRowBinder().bind(tx.newInsert(Users.TABLE), users.get(0)).execute();
+      tx.newBatchInsert(Users.TABLE)
+        .execute(users.stream().skip(1), USER_MAPPING.getRowBinder()::bind);
+    });
+
+    List<User> dbUsers = db.tx(tx->{
+      tx.setResult(tx.newSelect(Users.TABLE)
+        .orderAsc(Users.ID)
+        .execute()
+        .getAll(USER_MAPPING.getRowMapper()));
+    });
+    assertThat(dbUsers.size(), is(10));
+    for (int i=0; i<10; i++) {
+      assertThat(dbUsers.get(i).getId(), is(users.get(i).getId()));
+      assertThat(dbUsers.get(i).getFirstName(), is(users.get(i).getFirstName()));
+      assertThat(dbUsers.get(i).getLastName(), nullValue());
+      assertThat(dbUsers.get(i).getEmail(), is(users.get(i).getEmail()));
+    }
+
+    db.tx(tx->{
+      User user = users.get(3).lastName("Last");
+      USER_MAPPING.getRowBinder()
+        .bind(tx.newUpdate(Users.TABLE), user)
+        .where(equal(Users.ID, user.getId()))
+        .execute();
+    });
+    User updated = db.tx(tx->{
+      tx.setResult(tx.newSelect(Users.TABLE)
+        .where(equal(Users.ID, "u3"))
+        .execute()
+        .getAll(USER_MAPPING.getRowMapper())
+        .get(0));
+    });
+    assertThat(updated.getLastName(), is("Last"));
+  }
+}
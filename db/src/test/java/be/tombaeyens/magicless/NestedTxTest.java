@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NestedTxTest {
+
+  @Test
+  public void testFailingNestedWorkIsRolledBack() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:nestedtx"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    String result = db.tx(tx->{
+      tx.setResult("outer");
+      for (int i=1; i<=3; i++) {
+        String id = "u"+i;
+        try {
+          String nestedResult = tx.nested(nestedTx->{
+            Users.insertUser(nestedTx, new User().id(id));
+            if ("u2".equals(id)) {
+              throw new RuntimeException("bad item");
+            }
+            nestedTx.setResult(id);
+          });
+          assertThat(nestedResult, is(id));
+        } catch (RuntimeException e) {
+          assertThat(e.getMessage(), is("bad item"));
+        }
+      }
+      // setRollbackOnly in a nested unit only rolls back that unit
+      assertThat(tx.nested(nestedTx->{
+        Users.insertUser(nestedTx, new User().id("u4"));
+        nestedTx.setRollbackOnly();
+      }), is(nullValue()));
+      assertFalse(tx.isRollbackOnly());
+    });
+    assertThat(result, is("outer"));
+
+    List<String> ids = db.tx(tx->tx.setResult(Users.findAllUsers(tx)
+      .map(User::getId)
+      .sorted()
+      .collect(Collectors.toList())));
+    assertThat(ids.toString(), is("[u1, u3]"));
+  }
+
+  @Test
+  public void testFailedSavepointRollbackRollsBackOuterTx() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:nestedtxrollbackfailure"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    // rollback only without an exception doesn't make db.tx throw
+    db.tx(tx->{
+      Users.insertUser(tx, new User().id("outer"));
+      try {
+        tx.nested(nestedTx->{
+          Users.insertUser(nestedTx, new User().id("nested"));
+          // invalidates the savepoint so that rollback(Savepoint) throws
+          nestedTx.getConnection().releaseSavepoint(nestedTx.getConnection().setSavepoint());
+          nestedTx.getConnection().commit();
+          throw new RuntimeException("bad item");
+        });
+        fail("expected savepoint rollback failure");
+      } catch (RuntimeException e) {
+        assertThat(e.getMessage(), containsString("rollback to savepoint"));
+        assertThat(e.getSuppressed()[0].getMessage(), is("bad item"));
+      }
+      assertTrue(tx.isRollbackOnly());
+      // the outer tx ignores the failure, but it must still be rolled back
+      Users.insertUser(tx, new User().id("after"));
+    });
+
+    List<String> ids = db.tx(tx->tx.setResult(Users.findAllUsers(tx)
+      .map(User::getId)
+      .sorted()
+      .collect(Collectors.toList())));
+    // the explicit commit in the nested unit committed outer and nested
+    assertThat(ids.toString(), is("[nested, outer]"));
+  }
+}
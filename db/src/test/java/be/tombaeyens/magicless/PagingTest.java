@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PagingTest {
+
+  @Test
+  public void testLimitOffsetAndSeek() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:paging"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.tx(tx->{
+      tx.newBatchInsert(Users.TABLE)
+        .execute(IntStream.range(10, 35).boxed(), (batchInsert, i)->batchInsert
+          .set(Users.ID, "u"+i)
+          .set(Users.LAST_NAME, i%2==0 ? "Even" : "Odd"));
+    });
+
+    List<String> ids = db.tx(tx->{
+      tx.setResult(tx.newSelect(Users.ID)
+        .orderAsc(Users.ID)
+        .limit(3)
+        .offset(5)
+        .execute()
+        .getAll(results->results.get(Users.ID)));
+    });
+    assertThat(ids.toString(), is("[u15, u16, u17]"));
+
+    Column[] orderColumns = {Users.LAST_NAME, Users.ID};
+    List<String> pagedIds = new ArrayList<>();
+    User lastUser = null;
+    do {
+      User previous = lastUser;
+      List<User> page = db.tx(tx->{
+        tx.setResult(tx.newSelect(Users.TABLE)
+          .seekAfter(orderColumns, previous!=null ? new Object[]{previous.getLastName(), previous.getId()} : null)
+          .limit(10)
+          .execute()
+          .getAll(results->new User()
+            .id(results.get(Users.ID))
+            .lastName(results.get(Users.LAST_NAME))));
+      });
+      page.forEach(user->pagedIds.add(user.getId()));
+      lastUser = page.size()==10 ? page.get(9) : null;
+    } while (lastUser!=null);
+
+    List<String> expected = IntStream.range(10, 35)
+      .mapToObj(i->"u"+i)
+      .sorted((id1, id2)->{
+        int i1 = Integer.parseInt(id1.substring(1));
+        int i2 = Integer.parseInt(id2.substring(1));
+        return i1%2!=i2%2 ? Integer.compare(i1%2, i2%2) : id1.compareTo(id2);
+      })
+      .collect(Collectors.toList());
+    assertThat(pagedIds, is(expected));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.impl.CacheStats;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static be.tombaeyens.magicless.db.Condition.like;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class QueryCacheTest {
+
+  static long countUsers(Tx tx) {
+    return tx.newSelect(Users.TABLE)
+      .where(like(Users.ID, "u%"))
+      .cached(Duration.ofMinutes(5))
+      .execute()
+      .stream()
+      .count();
+  }
+
+  @Test
+  public void testCachedResultsAreInvalidatedByWrites() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:querycache"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    CacheStats stats = db.getQueryCache().getStats();
+
+    db.tx(tx->Users.insertUser(tx, new User().id("u1")));
+
+    assertThat(db.<Long>tx(tx->tx.setResult(countUsers(tx))), is(1L));
+    assertThat(db.<Long>tx(tx->tx.setResult(countUsers(tx))), is(1L));
+    assertThat(stats.getMisses(), is(1L));
+    assertThat(stats.getHits(), is(1L));
+
+    db.tx(tx->{
+      Users.insertUser(tx, new User().id("u2"));
+      // the transaction that wrote to the table must see its own writes
+      assertThat(countUsers(tx), is(2L));
+    });
+    assertThat(stats.getHits(), is(1L));
+
+    // the commit invalidated the cached results
+    assertThat(db.<Long>tx(tx->tx.setResult(countUsers(tx))), is(2L));
+    assertThat(stats.getMisses(), is(2L));
+    assertThat(stats.getEvictions(), is(1L));
+  }
+}
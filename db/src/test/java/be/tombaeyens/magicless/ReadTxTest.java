@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.pool.ConnectionPool;
+import be.tombaeyens.magicless.db.pool.ReplicaRouter;
+import be.tombaeyens.magicless.db.pool.SimpleConnectionPool;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadTxTest {
+
+  static long countUsers(Db db) {
+    return db.<Long>readTx(tx->{
+      assertTrue(tx.isReadOnly());
+      tx.setResult(Users.findAllUsers(tx).count());
+    });
+  }
+
+  @Test
+  public void testReadTxOnReplicas() {
+    Db replica1 = new Db(new DbConfiguration().url("jdbc:h2:mem:replica1"));
+    Db replica2 = new Db(new DbConfiguration().url("jdbc:h2:mem:replica2"));
+    new SchemaManager(replica1, new CreateUserTable()).createSchema();
+    new SchemaManager(replica2, new CreateUserTable()).createSchema();
+    replica2.tx(tx->Users.insertUser(tx, new User().id("u1")));
+
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:primary")
+      .replica("jdbc:h2:mem:replica1")
+      .replica("jdbc:h2:mem:replica2")
+      .replicaSelection(ReplicaRouter.ROUND_ROBIN));
+
+    // the replicas have a different number of users
+    assertThat(countUsers(db) + countUsers(db), is(1L));
+
+    try {
+      db.readTx(tx->Users.insertUser(tx, new User().id("u2")));
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage().contains("read only"), is(true));
+    }
+  }
+
+  @Test
+  public void testReadTxWithoutReplicasUsesPrimary() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:readtxprimary"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.tx(tx->Users.insertUser(tx, new User().id("u1")));
+    assertThat(countUsers(db), is(1L));
+  }
+
+  @Test
+  public void testConnectionIsReturnedWhenReadOnlyResetFails() {
+    DbConfiguration dbConfiguration = new DbConfiguration()
+      .url("jdbc:h2:mem:readtxreset")
+      .connectionPool(DbConfiguration.CONNECTION_POOL_SIMPLE);
+    Db db = new Db(dbConfiguration) {
+      @Override
+      protected ConnectionPool createConnectionPool(DbConfiguration dbConfiguration) {
+        return new SimpleConnectionPool(dbConfiguration) {
+          @Override
+          protected Connection openConnection() throws SQLException {
+            Connection connection = super.openConnection();
+            // a broken connection that can't be switched back to read write
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+              (proxy, method, args)->{
+                if (method.getName().equals("setReadOnly") && !((Boolean) args[0])) {
+                  throw new SQLException("connection broken");
+                }
+                try {
+                  return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              });
+          }
+        };
+      }
+    };
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    assertThat(countUsers(db), is(0L));
+    assertThat(db.getConnectionPoolStats().getActive(), is(0));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.RetryPolicy;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RetryTest {
+
+  static RuntimeException serializationFailure() {
+    return new RuntimeException("tx conflict", new SQLException("serialization failure", "40001"));
+  }
+
+  @Test
+  public void testRetryableFailuresAreRetried() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:retry")
+      .retryPolicy(new RetryPolicy()
+        .maxAttempts(3)
+        .initialBackoffMillis(1)));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    RetryPolicy retryPolicy = db.getRetryPolicy();
+
+    AtomicInteger attempts = new AtomicInteger();
+    db.tx(tx->{
+      Users.insertUser(tx, new User().id("u1"));
+      if (attempts.incrementAndGet()<3) {
+        throw serializationFailure();
+      }
+    });
+    assertThat(attempts.get(), is(3));
+    assertThat(retryPolicy.getRetryCount(), is(2L));
+    assertThat(retryPolicy.getRetrySuccessCount(), is(1L));
+    // the failed attempts were rolled back
+    assertThat(db.<Long>tx(tx->tx.setResult(Users.findAllUsers(tx).count())), is(1L));
+
+    attempts.set(0);
+    try {
+      db.tx(tx->{
+        attempts.incrementAndGet();
+        throw serializationFailure();
+      });
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), is("tx conflict"));
+    }
+    assertThat(attempts.get(), is(3));
+    assertThat(retryPolicy.getRetriesExhaustedCount(), is(1L));
+
+    // other failures are not retried
+    attempts.set(0);
+    try {
+      db.tx(tx->{
+        attempts.incrementAndGet();
+        throw new RuntimeException("bug");
+      });
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(attempts.get(), is(1));
+    }
+  }
+
+  @Test
+  public void testIsolationIsRestored() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:isolation")
+      .connectionPool(DbConfiguration.CONNECTION_POOL_SIMPLE)
+      .maxPoolSize(1));
+    int defaultIsolation = db.<Integer>tx(tx->tx.setResult(tx.getIsolation()));
+    db.tx(tx->{
+      tx.isolation(Connection.TRANSACTION_SERIALIZABLE);
+      assertThat(tx.getIsolation(), is(Connection.TRANSACTION_SERIALIZABLE));
+    });
+    assertThat(db.<Integer>tx(tx->tx.setResult(tx.getIsolation())), is(defaultIsolation));
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.TxLogic;
+import be.tombaeyens.magicless.db.schema.SchemaHistory;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SchemaManagerTest {
+
+  static void lockSchema(Db db, String process, LocalDateTime time) {
+    db.tx(tx->tx.newUpdate(SchemaHistory.TABLE)
+      .set(SchemaHistory.PROCESS, process)
+      .set(SchemaHistory.TIME, time)
+      .where(equal(SchemaHistory.TYPE, SchemaHistory.TYPE_LOCK))
+      .execute());
+  }
+
+  static boolean usersTableExists(Db db) {
+    return db.tx(tx->tx.setResult(tx.getTableNames().stream()
+      .anyMatch(tableName->tableName.equalsIgnoreCase(Users.TABLE.getName()))));
+  }
+
+  @Test
+  public void testFirstStartHasNoFailingTransactions() {
+    List<Exception> failures = new ArrayList<>();
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:schemafirststart")) {
+      @Override
+      protected <T> T executeOnce(TxLogic txLogic, boolean readOnly) {
+        try {
+          return super.executeOnce(txLogic, readOnly);
+        } catch (RuntimeException e) {
+          failures.add(e);
+          throw e;
+        }
+      }
+    };
+    new SchemaManager(db, new CreateUserTable()).ensureCurrentSchema();
+    assertThat(usersTableExists(db), is(true));
+    assertThat(failures.toString(), failures.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testExpiredLockIsTakenOver() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:schemalockexpired"));
+    // creates the schema history without updates
+    new SchemaManager(db).ensureCurrentSchema();
+    lockSchema(db, "crashed", LocalDateTime.now().minusHours(1));
+
+    new SchemaManager(db, new CreateUserTable())
+      .lockLeaseMillis(60000)
+      .ensureCurrentSchema();
+    assertThat(usersTableExists(db), is(true));
+  }
+
+  @Test
+  public void testWaitingForLockTimesOut() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:schemalocktimeout"));
+    new SchemaManager(db).ensureCurrentSchema();
+    lockSchema(db, "upgrading", LocalDateTime.now());
+
+    try {
+      new SchemaManager(db, new CreateUserTable())
+        .lockWaitTimeoutMillis(300)
+        .ensureCurrentSchema();
+      fail("expected timeout");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("upgrading"));
+    }
+    assertThat(usersTableExists(db), is(false));
+
+    // once the other process released the lock, waiting processes take over
+    lockSchema(db, null, null);
+    new SchemaManager(db, new CreateUserTable()).ensureCurrentSchema();
+    assertThat(usersTableExists(db), is(true));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.SelectLogger;
+import be.tombaeyens.magicless.db.SelectResults;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.TableSelectLogger;
+import be.tombaeyens.magicless.db.types.VarcharType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class SelectLoggerTest {
+
+  static final AtomicInteger logTextCount = new AtomicInteger();
+
+  static class CountingVarcharType extends VarcharType {
+    CountingVarcharType() {
+      super(255);
+    }
+    @Override
+    public String toLogText(Object value) {
+      logTextCount.incrementAndGet();
+      return super.toLogText(value);
+    }
+  }
+
+  static class Things extends Table {
+    static final Column NAME = new Column().name("name").type(new CountingVarcharType()).primaryKey();
+    static final Things TABLE = new Things();
+    private Things() {
+      name("things");
+      column(NAME);
+    }
+  }
+
+  /** keeps the select loggers that are created */
+  static class RecordingDb extends Db {
+    List<SelectLogger> selectLoggers = new ArrayList<>();
+    Integer maxRows;
+    boolean debug;
+    RecordingDb(String url, Integer maxRows, boolean debug) {
+      super(new DbConfiguration().url(url));
+      this.maxRows = maxRows;
+      this.debug = debug;
+    }
+    @Override
+    protected boolean isSelectLogEnabled() {
+      // simulates the DB_LOGGER debug level
+      return debug;
+    }
+    @Override
+    protected SelectLogger createSelectLogger(SelectResults selectResults) {
+      SelectLogger selectLogger = maxRows!=null
+        ? new TableSelectLogger(selectResults, maxRows)
+        : super.createSelectLogger(selectResults);
+      selectLoggers.add(selectLogger);
+      return selectLogger;
+    }
+  }
+
+  static void insertThings(Db db, int count) {
+    db.tx(tx->{
+      tx.newCreateTable(Things.TABLE).execute();
+      for (int i=0; i<count; i++) {
+        tx.newInsert(Things.TABLE)
+          .set(Things.NAME, "thing"+i)
+          .execute();
+      }
+    });
+  }
+
+  static void selectAllThings(Db db) {
+    db.tx(tx->{
+      SelectResults selectResults = tx.newSelect(Things.TABLE).execute();
+      while (selectResults.next()) {
+        selectResults.get(Things.NAME);
+      }
+    });
+  }
+
+  @Test
+  public void testNoLoggingWhenDebugIsOff() {
+    RecordingDb db = new RecordingDb("jdbc:h2:mem:selectloggeroff", null, false);
+    insertThings(db, 3);
+    logTextCount.set(0);
+
+    selectAllThings(db);
+
+    assertThat(db.selectLoggers.size(), is(1));
+    assertThat(db.selectLoggers.get(0), sameInstance(SelectLogger.NONE));
+    assertThat(logTextCount.get(), is(0));
+  }
+
+  @Test
+  public void testTableSelectLoggerBuffersMaxRows() {
+    RecordingDb db = new RecordingDb("jdbc:h2:mem:selectloggermaxrows", 2, true);
+    insertThings(db, 5);
+    logTextCount.set(0);
+
+    selectAllThings(db);
+
+    TableSelectLogger selectLogger = (TableSelectLogger) db.selectLoggers.get(db.selectLoggers.size()-1);
+    assertThat(selectLogger.getRowCount(), is(5L));
+    assertThat(selectLogger.getLoggedRowCount(), is(2));
+    assertThat(logTextCount.get(), is(2));
+  }
+}
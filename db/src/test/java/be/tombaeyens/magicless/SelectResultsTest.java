@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.SelectResults;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.types.LongType;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SelectResultsTest {
+
+  public static class Measurements extends Table {
+    public static final Column ID = new Column().name("id").typeVarchar(255).primaryKey();
+    public static final Column COUNT = new Column().name("count").type(new LongType("BIGINT"));
+    public static final Column SIZE = new Column().name("size").typeInteger();
+    public static final Column VALUE = new Column().name("value").typeDouble();
+    public static final Column VALID = new Column().name("valid").typeBoolean();
+    public static final Measurements TABLE = new Measurements();
+    private Measurements() {
+      name("measurements");
+      column(ID);
+      column(COUNT);
+      column(SIZE);
+      column(VALUE);
+      column(VALID);
+    }
+  }
+
+  @Test
+  public void testPrimitiveGetters() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:selectresults"));
+    db.tx(tx->{
+      tx.newCreateTable(Measurements.TABLE).execute();
+      tx.newInsert(Measurements.TABLE)
+        .set(Measurements.ID, "m1")
+        .set(Measurements.COUNT, 5000000000L)
+        .set(Measurements.SIZE, 7)
+        .set(Measurements.VALUE, 1.5)
+        .set(Measurements.VALID, true)
+        .execute();
+      tx.newInsert(Measurements.TABLE)
+        .set(Measurements.ID, "m2")
+        .execute();
+    });
+
+    db.tx(tx->{
+      SelectResults results = tx.newSelect(Measurements.TABLE)
+        .orderAsc(Measurements.ID)
+        .execute();
+
+      assertThat(results.next(), is(true));
+      assertThat(results.getLong(Measurements.COUNT), is(5000000000L));
+      assertThat(results.wasNull(), is(false));
+      assertThat(results.getInt(Measurements.SIZE), is(7));
+      assertThat(results.getDouble(Measurements.VALUE), is(1.5));
+      assertThat(results.getBoolean(Measurements.VALID), is(true));
+
+      assertThat(results.next(), is(true));
+      assertThat(results.getLong(Measurements.COUNT), is(0L));
+      assertThat(results.wasNull(), is(true));
+      assertThat(results.getInt(Measurements.SIZE, -1), is(-1));
+      assertThat(results.getDouble(Measurements.VALUE, -1), is(-1.0));
+      assertThat(results.getBoolean(Measurements.VALID, true), is(true));
+      assertThat(results.get(Measurements.COUNT), nullValue());
+
+      assertThat(results.next(), is(false));
+      assertThat(results.isClosed(), is(true));
+    });
+  }
+
+  @Test
+  public void testStreamingResultsAreClosed() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:selectresultsstream"));
+    db.tx(tx->{
+      tx.newCreateTable(Measurements.TABLE).execute();
+      tx.newBatchInsert(Measurements.TABLE)
+        .execute(IntStream.range(0, 100).boxed(), (batchInsert, i)->batchInsert
+          .set(Measurements.ID, "m"+i)
+          .set(Measurements.COUNT, i));
+    });
+
+    SelectResults[] leftOpen = new SelectResults[1];
+    db.tx(tx->{
+      SelectResults results = tx.newSelect(Measurements.TABLE)
+        .fetchSize(10)
+        .execute();
+      try (Stream<SelectResults> rows = results.stream()) {
+        assertThat(rows.limit(5).count(), is(5L));
+      }
+      assertThat(results.isClosed(), is(true));
+
+      leftOpen[0] = tx.newSelect(Measurements.TABLE).execute();
+      leftOpen[0].next();
+    });
+    assertThat(leftOpen[0].isClosed(), is(true));
+  }
+}
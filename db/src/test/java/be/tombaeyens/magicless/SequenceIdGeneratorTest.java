@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.id.SequenceIdGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SequenceIdGeneratorTest {
+
+  @Test
+  public void testBlockAllocation() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:sequenceblocks"));
+    SequenceIdGenerator idGenerator = new SequenceIdGenerator(db, "orders")
+      .blockSize(10);
+
+    for (long expected=1; expected<=25; expected++) {
+      assertThat(idGenerator.generateLongId(), is(expected));
+    }
+    assertThat(idGenerator.generateId("o"), is("o26"));
+    // 3 blocks in use plus possibly the prefetched 4th
+    assertTrue(idGenerator.getAllocatedBlocks()<=4);
+  }
+
+  @Test
+  public void testConcurrentGeneratorsShareTheSequence() throws Exception {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:sequenceconcurrent"));
+    // two generators on the same sequence simulate two processes
+    SequenceIdGenerator first = new SequenceIdGenerator(db, "orders").blockSize(50);
+    SequenceIdGenerator second = new SequenceIdGenerator(db, "orders").blockSize(50);
+
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t=0; t<4; t++) {
+      SequenceIdGenerator idGenerator = t%2==0 ? first : second;
+      futures.add(executor.submit(()->{
+        for (int i=0; i<2000; i++) {
+          ids.add(idGenerator.generateLongId());
+        }
+      }));
+    }
+    for (Future<?> future: futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    assertThat(ids.size(), is(8000));
+  }
+
+  @Test
+  public void testIdsInsideSaturatedAsyncTransactions() throws Exception {
+    // one async thread and permit: an allocation queued on the async
+    // executor would wait behind the transaction that waits for it
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:sequenceasync")
+      .maxPoolSize(2)
+      .asyncThreads(1));
+    SequenceIdGenerator idGenerator = new SequenceIdGenerator(db, "orders")
+      .blockSize(2);
+
+    List<Long> ids = db.<List<Long>>txAsync(tx->{
+      List<Long> generated = new ArrayList<>();
+      for (int i=0; i<5; i++) {
+        generated.add(idGenerator.generateLongId());
+      }
+      tx.setResult(generated);
+    }).get(30, TimeUnit.SECONDS);
+    assertThat(ids.toString(), is("[1, 2, 3, 4, 5]"));
+  }
+
+  @Test
+  public void testConcurrentAllocationsAreRetriedInNewTransactions() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:sequenceretry"));
+    List<Tx> attemptTxs = new ArrayList<>();
+    int[] conflicts = {2};
+    SequenceIdGenerator idGenerator = new SequenceIdGenerator(db, "orders") {
+      @Override
+      protected Long tryAllocateBlock(Tx tx) {
+        attemptTxs.add(tx);
+        // another process allocates a block right before this one
+        return conflicts[0]-- > 0 ? null : super.tryAllocateBlock(tx);
+      }
+    }.blockSize(10);
+
+    assertThat(idGenerator.generateLongId(), is(1L));
+    assertThat(attemptTxs.size(), is(3));
+    assertThat(new HashSet<>(attemptTxs).size(), is(3));
+
+    SequenceIdGenerator starved = new SequenceIdGenerator(db, "invoices") {
+      @Override
+      protected Long tryAllocateBlock(Tx tx) {
+        return null;
+      }
+    };
+    try {
+      starved.generateLongId();
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("in "+SequenceIdGenerator.MAX_ALLOCATION_ATTEMPTS+" attempts"));
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.SlowQueryLog;
+import be.tombaeyens.magicless.db.impl.Parameters;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SlowQueryLogTest {
+
+  static void findUser(Db db, String id) {
+    db.tx(tx->tx.newSelect(Users.TABLE)
+      .where(equal(Users.ID, id))
+      .execute()
+      .stream()
+      .count());
+  }
+
+  @Test
+  public void testSlowQueriesAreRateLimited() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:slowqueries")
+      .slowQueryThresholdMillis(0)
+      .slowQueryMaxPerMinute(2));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    SlowQueryLog slowQueryLog = db.getSlowQueryLog();
+
+    findUser(db, "u1");
+    findUser(db, "u2");
+    findUser(db, "u3");
+
+    assertThat(slowQueryLog.getLoggedCount(), is(2L));
+    assertThat(slowQueryLog.getSuppressedCount(), is(1L));
+  }
+
+  @Test
+  public void testSlowIterationOfFastQueryIsNotLogged() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:slowiteration")
+      .slowQueryThresholdMillis(200));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.tx(tx->{
+      Users.insertUser(tx, new User().id("u1"));
+      Users.insertUser(tx, new User().id("u2"));
+    });
+
+    db.tx(tx->tx.newSelect(Users.TABLE)
+      .execute()
+      .stream()
+      .forEach(selectResults->{
+        try {
+          // the application takes its time to process each row
+          Thread.sleep(150);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }));
+
+    assertThat(db.getSlowQueryLog().getLoggedCount(), is(0L));
+  }
+
+  @Test
+  public void testSlowQueryWithBoundSqlAndExplain() throws Exception {
+    DbConfiguration dbConfiguration = new DbConfiguration()
+      .url("jdbc:h2:mem:slowqueriesexplain")
+      .slowQueryThresholdMillis(0)
+      .slowQueryExplain(true);
+    Db db = new Db(dbConfiguration);
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.tx(tx->Users.insertUser(tx, new User().id("u1")));
+
+    BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    db.addStatementListener(new SlowQueryLog(db, dbConfiguration) {
+      @Override
+      protected void log(String message) {
+        messages.add(message);
+      }
+    });
+
+    findUser(db, "u1");
+
+    String message = messages.poll(10, TimeUnit.SECONDS);
+    assertThat(message, containsString("Slow Select"));
+    assertThat(message, containsString("= u1"));
+    assertThat(message, containsString("Query plan:"));
+    assertThat(message, containsString("PRIMARY_KEY"));
+    db.close();
+  }
+
+  @Test
+  public void testBoundSqlWithQuestionMarkLiteral() {
+    Parameters parameters = new Parameters();
+    parameters.addParameter("u1", Users.ID.getType());
+    assertThat(parameters.toLogSql("SELECT * FROM users WHERE id = ?"),
+      is("SELECT * FROM users WHERE id = u1"));
+    // a ? in a literal must not fail the statement that is logged
+    assertThat(parameters.toLogSql("SELECT * FROM users WHERE id = ? AND email <> '?'"),
+      is("SELECT * FROM users WHERE id = ? AND email <> '?'\n-- parameters u1"));
+  }
+}
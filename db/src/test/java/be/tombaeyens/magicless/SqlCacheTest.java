@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.dialects.H2Dialect;
+import be.tombaeyens.magicless.db.impl.CacheStats;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SqlCacheTest {
+
+  @Test
+  public void testSqlIsCachedPerStatementShape() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:sqlcache")
+      .dbDialect(new H2Dialect()));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    db.getSqlCache().clear();
+    CacheStats stats = db.getSqlCache().getStats();
+    stats.reset();
+
+    db.tx(tx->{
+      for (int i=0; i<3; i++) {
+        Users.insertUser(tx, new User()
+          .id("u"+i)
+          .firstName("Name"+i)
+          .email("u"+i+"@example.com"));
+      }
+    });
+    // same columns are set for all users
+    assertThat(stats.getMisses(), is(1L));
+    assertThat(stats.getHits(), is(2L));
+
+    db.tx(tx->{
+      for (String id: new String[]{"u0", "u1", "u2"}) {
+        tx.newSelect(Users.TABLE)
+          .where(equal(Users.ID, id))
+          .execute()
+          .log();
+      }
+    });
+    assertThat(stats.getMisses(), is(2L));
+    assertThat(stats.getHits(), is(4L));
+
+    // a different condition structure is a different shape
+    db.tx(tx->{
+      tx.newSelect(Users.TABLE)
+        .where(equal(Users.EMAIL, "u0@example.com"))
+        .execute()
+        .log();
+    });
+    assertThat(stats.getMisses(), is(3L));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.impl.CacheStats;
+import be.tombaeyens.magicless.db.impl.StatementCache;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatementCacheTest {
+
+  @Test
+  public void testPreparedStatementsAreReusedInTx() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:statementcache"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    CacheStats stats = db.getStatementCacheStats();
+    stats.reset();
+
+    db.tx(tx->{
+      for (int i=0; i<5; i++) {
+        Users.insertUser(tx, new User()
+          .id("u"+i)
+          .firstName("Name"+i)
+          .email("u"+i+"@example.com"));
+      }
+    });
+    assertThat(stats.getMisses(), is(1L));
+    assertThat(stats.getHits(), is(4L));
+
+    db.tx(tx->{
+      // nested iteration over the same query can't share the prepared statement
+      long pairs = Users.findAllUsers(tx)
+        .mapToLong(user->Users.findAllUsers(tx).count())
+        .sum();
+      assertThat(pairs, is(25L));
+    });
+  }
+
+  @Test
+  public void testEvictedStatementsAreClosed() throws Exception {
+    try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:statementcacheeviction")) {
+      StatementCache statementCache = new StatementCache(connection, 2, new CacheStats());
+
+      PreparedStatement a = statementCache.checkOut("SELECT 1");
+      PreparedStatement b = statementCache.checkOut("SELECT 2");
+      statementCache.checkIn("SELECT 2", b);
+      // checking in is not a use, so a remains the least recently used
+      statementCache.checkIn("SELECT 1", a);
+
+      PreparedStatement c = statementCache.checkOut("SELECT 3");
+      assertThat(a.isClosed(), is(true));
+      assertThat(b.isClosed(), is(false));
+
+      // a statement that is evicted while in use is closed when it is checked in
+      PreparedStatement d = statementCache.checkOut("SELECT 4");
+      assertThat(c.isClosed(), is(false));
+      PreparedStatement e = statementCache.checkOut("SELECT 5");
+      assertThat(c.isClosed(), is(false));
+      statementCache.checkIn("SELECT 3", c);
+      assertThat(c.isClosed(), is(true));
+
+      statementCache.close();
+      assertThat(d.isClosed(), is(true));
+      assertThat(e.isClosed(), is(true));
+    }
+  }
+}
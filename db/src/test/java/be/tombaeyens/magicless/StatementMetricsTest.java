@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.SelectLogger;
+import be.tombaeyens.magicless.db.SelectResults;
+import be.tombaeyens.magicless.db.StatementExecution;
+import be.tombaeyens.magicless.db.StatementMetrics;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatementMetricsTest {
+
+  @Test
+  public void testStatementExecutionsAreMeasured() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:statementmetrics"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    StatementMetrics statementMetrics = new StatementMetrics();
+    List<StatementExecution> executions = new ArrayList<>();
+    db.addStatementListener(statementMetrics);
+    db.addStatementListener(executions::add);
+
+    db.tx(tx->{
+      Users.insertUser(tx, new User().id("u1").firstName("John").lastName("Doe").email("john@example.com"));
+      Users.insertUser(tx, new User().id("u2").firstName("Jane").lastName("Doe").email("jane@example.com"));
+      assertThat(Users.findAllUsers(tx).count(), is(2L));
+    });
+
+    assertThat(executions.size(), is(3));
+    StatementExecution insert = executions.get(0);
+    assertThat(insert.getSql(), startsWith("INSERT"));
+    assertThat(insert.getParameterCount(), is(4));
+    assertThat(insert.getRowCount(), is(1));
+    StatementExecution select = executions.get(2);
+    assertTrue(select.isQuery());
+    assertThat(select.getRowCount(), is(2));
+    assertTrue(select.getDurationNanos()>=select.getExecuteNanos());
+
+    StatementMetrics.StatementStats insertStats = statementMetrics.getStats(insert.getSql());
+    assertThat(insertStats.getCount(), is(2L));
+    assertThat(insertStats.getRowCount(), is(2L));
+    assertTrue(insertStats.getPercentileMillis(0.99)<=insertStats.getMaxMillis());
+    assertThat(statementMetrics.getStats(select.getSql()).getRowCount(), is(2L));
+  }
+
+  @Test
+  public void testIterationTimeIsNotMeasured() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:statementmetricsiteration"));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    db.tx(tx->{
+      Users.insertUser(tx, new User().id("u1"));
+      Users.insertUser(tx, new User().id("u2"));
+    });
+    StatementMetrics statementMetrics = new StatementMetrics();
+    List<StatementExecution> executions = new ArrayList<>();
+    db.addStatementListener(statementMetrics);
+    db.addStatementListener(executions::add);
+
+    db.tx(tx->Users.findAllUsers(tx).forEach(user->{
+      try {
+        // the application takes its time to process each row
+        Thread.sleep(150);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }));
+
+    StatementExecution select = executions.get(0);
+    assertTrue(select.getDurationNanos()>=TimeUnit.MILLISECONDS.toNanos(300));
+    assertTrue(statementMetrics.getStats(select.getSql()).getMaxMillis()<300d);
+  }
+
+  @Test
+  public void testFailureAfterExecuteEndsTheExecution() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:statementmetricsfailure")) {
+      @Override
+      protected SelectLogger createSelectLogger(SelectResults selectResults) {
+        throw new RuntimeException("no select logger");
+      }
+    };
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+    StatementMetrics statementMetrics = new StatementMetrics();
+    List<StatementExecution> executions = new ArrayList<>();
+    db.addStatementListener(statementMetrics);
+    db.addStatementListener(executions::add);
+
+    try {
+      db.tx(tx->Users.findAllUsers(tx).count());
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), containsString("no select logger"));
+    }
+
+    assertThat(executions.size(), is(1));
+    assertTrue(executions.get(0).isFailed());
+    assertThat(statementMetrics.getStats(executions.get(0).getSql()).getErrorCount(), is(1L));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Tx;
+import be.tombaeyens.magicless.db.schema.SchemaManager;
+import be.tombaeyens.magicless.tables.User;
+import be.tombaeyens.magicless.tables.Users;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TxAsyncTest {
+
+  @Test
+  public void testParallelAsyncTransactions() throws Exception {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:txasync")
+      .maxPoolSize(3));
+    new SchemaManager(db, new CreateUserTable()).createSchema();
+
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    for (int i=0; i<10; i++) {
+      String id = "u"+i;
+      futures.add(db.txAsync(tx->{
+        assertThat(Tx.getCurrentTx(), sameInstance(tx));
+        Users.insertUser(tx, new User().id(id));
+        tx.setResult(id);
+      }));
+    }
+    for (int i=0; i<10; i++) {
+      assertThat(futures.get(i).get(), is("u"+i));
+    }
+    assertThat(db.<Long>readTxAsync(tx->tx.setResult(Users.findAllUsers(tx).count())).get(), is(10L));
+    assertThat(Tx.getCurrentTx(), is(nullValue()));
+
+    try {
+      db.txAsync(tx->{ throw new RuntimeException("failing tx"); }).get();
+      fail("expected exception");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause().getMessage(), is("failing tx"));
+    }
+    db.close();
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:txasyncvirtual")
+      .asyncVirtualThreads(true));
+    // falls back to platform threads on JVMs without virtual threads
+    assertThat(db.<String>txAsync(tx->tx.setResult("done")).get(), is("done"));
+    db.close();
+  }
+}
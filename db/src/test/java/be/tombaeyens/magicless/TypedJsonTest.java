@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 Tom Baeyens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package be.tombaeyens.magicless;
+
+import be.tombaeyens.magicless.db.Column;
+import be.tombaeyens.magicless.db.Db;
+import be.tombaeyens.magicless.db.DbConfiguration;
+import be.tombaeyens.magicless.db.Table;
+import be.tombaeyens.magicless.db.types.LazyJson;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static be.tombaeyens.magicless.db.Condition.equal;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TypedJsonTest {
+
+  static class Address {
+    String street;
+    List<String> tags;
+  }
+
+  static class Customers extends Table {
+    static final Gson GSON = new Gson();
+    static final Column ID = new Column().name("id").typeVarchar(255).primaryKey();
+    static final Column ADDRESS = new Column().name("address").typeJson(Address.class, GSON);
+    static final Column TAGS = new Column().name("tags").typeJson(new TypeToken<List<String>>(){}.getType(), GSON, true);
+    static final Customers TABLE = new Customers();
+    private Customers() {
+      name("customers");
+      column(ID);
+      column(ADDRESS);
+      column(TAGS);
+    }
+  }
+
+  static <T> T select(Db db, String id, Column column) {
+    return db.tx(tx->tx.setResult(tx.newSelect(Customers.TABLE)
+      .where(equal(Customers.ID, id))
+      .execute()
+      .stream()
+      .map(selectResults->selectResults.get(column))
+      .collect(Collectors.toList())
+      .get(0)));
+  }
+
+  @Test
+  public void testTypedJsonColumns() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:typedjson"));
+    db.tx(tx->tx.newCreateTable(Customers.TABLE).execute());
+
+    Address address = new Address();
+    address.street = "Main street";
+    address.tags = Arrays.asList("home", "billing");
+
+    db.tx(tx->{
+      tx.newInsert(Customers.TABLE)
+        .set(Customers.ID, "full")
+        .set(Customers.ADDRESS, address)
+        .set(Customers.TAGS, address.tags)
+        .execute();
+      tx.newInsert(Customers.TABLE)
+        .set(Customers.ID, "empty")
+        .execute();
+    });
+
+    Address selected = select(db, "full", Customers.ADDRESS);
+    assertThat(selected.street, is("Main street"));
+    assertThat(selected.tags, is(address.tags));
+
+    LazyJson<List<String>> tags = select(db, "full", Customers.TAGS);
+    assertThat(tags.isParsed(), is(false));
+    assertThat(tags.getJson(), is("[\"home\",\"billing\"]"));
+    assertThat(tags.get(), is(address.tags));
+    assertThat(tags.isParsed(), is(true));
+
+    // an unparsed lazy value is written back as its original text
+    LazyJson<List<String>> unparsed = select(db, "full", Customers.TAGS);
+    db.tx(tx->tx.newUpdate(Customers.TABLE)
+      .set(Customers.TAGS, unparsed)
+      .where(equal(Customers.ID, "empty"))
+      .execute());
+    LazyJson<List<String>> copied = select(db, "empty", Customers.TAGS);
+    assertThat(copied.get(), is(address.tags));
+
+    assertThat(select(db, "empty", Customers.ADDRESS), nullValue());
+  }
+
+  static Address selectCached(Db db, String id) {
+    return db.tx(tx->tx.setResult(tx.newSelect(Customers.TABLE)
+      .where(equal(Customers.ID, id))
+      .cached(Duration.ofMinutes(5))
+      .execute()
+      .stream()
+      .map(selectResults->{
+        Address address = selectResults.get(Customers.ADDRESS);
+        String street = selectResults.read(Customers.ADDRESS, reader->
+          new Gson().fromJson(reader, Address.class).street);
+        assertThat(street, is(address.street));
+        return address;
+      })
+      .collect(Collectors.toList())
+      .get(0)));
+  }
+
+  @Test
+  public void testCachedTypedJsonReadsAreIndependentInstances() {
+    Db db = new Db(new DbConfiguration()
+      .url("jdbc:h2:mem:typedjsoncached"));
+    db.tx(tx->tx.newCreateTable(Customers.TABLE).execute());
+
+    Address address = new Address();
+    address.street = "Main street";
+    db.tx(tx->tx.newInsert(Customers.TABLE)
+      .set(Customers.ID, "cached")
+      .set(Customers.ADDRESS, address)
+      .execute());
+
+    Address first = selectCached(db, "cached");
+    // mutating a read value must not change the cached row
+    first.street = "Changed street";
+    Address second = selectCached(db, "cached");
+    assertThat(second, not(sameInstance(first)));
+    assertThat(second.street, is("Main street"));
+  }
+}
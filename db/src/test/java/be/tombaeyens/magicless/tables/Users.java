@@ -58,7 +58,8 @@ public class Users extends Table {
       .map(Users::createUser);
   }
 
-  private static User createUser(SelectResults selectResults) {
+  /** the hand written mapping */
+  public static User createUser(SelectResults selectResults) {
     return new User()
       .id(selectResults.get(ID))
       .firstName(selectResults.get(FIRST_NAME))